@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A SHA-256 hash of strings and file contents.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public final class Digest {
+
+	private static final int BUFFER_SIZE = 65536;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final MessageDigest digest;
+
+	private Digest() {
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+
+		} catch (NoSuchAlgorithmException e) {
+			// every platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static Digest sha256() {
+		return new Digest();
+	}
+
+	/**
+	 * Adds the string, terminated so that consecutive strings cannot run
+	 * into each other.
+	 *
+	 * @param text
+	 * @return this
+	 */
+	public Digest update(String text) {
+		Check.notNull(text);
+
+		digest.update(text.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		return this;
+	}
+
+	public Digest update(File file) throws IOException {
+		Check.notNull(file);
+
+		try (InputStream input = new FileInputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+			while ((count = input.read(buffer)) >= 0) {
+				digest.update(buffer, 0, count);
+			}
+		}
+
+		digest.update((byte) 0);
+		return this;
+	}
+
+	/**
+	 * @return the hash in hexadecimal, the digest cannot be used afterwards
+	 */
+	public String toHex() {
+		byte[] bytes = digest.digest();
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+
+		return new String(chars);
+	}
+}
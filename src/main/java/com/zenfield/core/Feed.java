@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes data into the standard input of a process.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+@FunctionalInterface
+public interface Feed {
+
+	/**
+	 * Writes the data into the stream. The stream must not be closed by the
+	 * feed. Throwing an exception aborts the process that is being fed.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	void write(OutputStream out) throws IOException;
+
+	static Feed of(String text) {
+		Check.notNull(text);
+
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		return out -> out.write(bytes);
+	}
+
+	/**
+	 * Feeds the content of the file. The data is transferred by the file
+	 * channel, which avoids copying it through the heap where the platform
+	 * supports it.
+	 *
+	 * @param file
+	 * @return the feed
+	 */
+	static Feed of(File file) {
+		Check.notNull(file);
+
+		return out -> {
+			try (FileChannel channel = new FileInputStream(file).getChannel()) {
+				WritableByteChannel target = Channels.newChannel(out);
+				long size = channel.size();
+				long position = 0;
+
+				while (position < size) {
+					position += channel.transferTo(position, size - position, target);
+				}
+			}
+		};
+	}
+
+	static Feed concat(Feed... feeds) {
+		Check.noneNull(feeds);
+
+		return out -> {
+			for (Feed feed : feeds) {
+				feed.write(out);
+			}
+		};
+	}
+}
@@ -179,4 +179,19 @@ public final class Files {
 			file.delete();
 		}
 	}
+
+	public static final void deleteTree(File file) {
+		if (file == null) {
+			return;
+		}
+
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteTree(child);
+			}
+		}
+
+		file.delete();
+	}
 }
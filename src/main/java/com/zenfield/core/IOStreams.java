@@ -43,15 +43,15 @@ public final class IOStreams {
 	 * @param out
 	 * @throws IOException
 	 */
-//	public static void copy(InputStream in, OutputStream out) throws IOException {
-//		Check.notNull(in);
-//		Check.notNull(out);
-//
-//		byte[] buffer = new byte[BUFFER_SIZE];
-//		int length;
-//
-//		while ((length = in.read(buffer)) > 0) {
-//			out.write(buffer, 0, length);
-//		}
-//	}
+	public static void copy(InputStream in, OutputStream out) throws IOException {
+		Check.notNull(in);
+		Check.notNull(out);
+
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int length;
+
+		while ((length = in.read(buffer)) > 0) {
+			out.write(buffer, 0, length);
+		}
+	}
 }
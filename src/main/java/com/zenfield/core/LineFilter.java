@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Copies a stream line by line while dropping the lines that match any of
+ * its rules. The lines are never decoded into strings: they are matched as
+ * bytes, and only the first {@link #WINDOW} bytes of a line are inspected,
+ * so arbitrarily long lines pass through in chunks.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public final class LineFilter {
+
+	public static final int WINDOW = 65536;
+	public static final LineFilter NONE = new LineFilter(new byte[0][], new byte[0][]);
+
+	private static final int BUFFER_SIZE = 262144;
+
+	private static enum Mode {
+		HEAD, PASS, SKIP
+	}
+
+	private final byte[][] prefixes;
+	private final byte[][] needles;
+
+	private LineFilter(byte[][] prefixes, byte[][] needles) {
+		Check.noneNull(prefixes);
+		Check.noneNull(needles);
+
+		this.prefixes = prefixes;
+		this.needles = needles;
+	}
+
+	/**
+	 * Drops the lines starting with any of the prefixes.
+	 *
+	 * @param prefixes
+	 * @return the filter
+	 */
+	public static LineFilter skipPrefix(String... prefixes) {
+		Check.notEmpty(prefixes);
+		return new LineFilter(toBytes(prefixes), new byte[0][]);
+	}
+
+	/**
+	 * Drops the lines containing any of the needles within the first
+	 * {@link #WINDOW} bytes.
+	 *
+	 * @param needles
+	 * @return the filter
+	 */
+	public static LineFilter skipContaining(String... needles) {
+		Check.notEmpty(needles);
+		return new LineFilter(new byte[0][], toBytes(needles));
+	}
+
+	public boolean isNone() {
+		return prefixes.length == 0 && needles.length == 0;
+	}
+
+	public long copy(InputStream in, OutputStream out) throws IOException {
+		Check.notNull(in);
+		Check.notNull(out);
+
+		return copy(Channels.newChannel(in), Channels.newChannel(out));
+	}
+
+	/**
+	 * Copies the filtered lines from the channel. The channels must be closed
+	 * by the caller.
+	 *
+	 * @param in
+	 * @param out
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	public long copy(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+		Check.notNull(in);
+		Check.notNull(out);
+
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		if (isNone()) {
+			long count = 0;
+			while (in.read(buffer) != -1) {
+				buffer.flip();
+				count += write(buffer, out);
+				buffer.clear();
+			}
+			return count;
+		}
+
+		ByteBuffer head = ByteBuffer.allocate(WINDOW);
+		byte[] data = buffer.array();
+		Mode mode = Mode.HEAD;
+		long count = 0;
+
+		while (in.read(buffer) != -1) {
+			buffer.flip();
+
+			while (buffer.hasRemaining()) {
+				int start = buffer.position();
+				int eol = indexOf(data, (byte) '\n', start, buffer.limit());
+				int end = eol < 0 ? buffer.limit() : eol + 1;
+
+				switch (mode) {
+					case HEAD:
+						if (head.position() == 0 && (eol >= 0 || end - start >= WINDOW)) {
+							// the decision can be made without copying the line
+							int length = Math.min(end - start, WINDOW);
+							if (!keep(data, start, start + length)) {
+								buffer.position(end);
+								mode = eol < 0 ? Mode.SKIP : Mode.HEAD;
+								break;
+							}
+
+							ByteBuffer slice = buffer.duplicate();
+							slice.limit(end);
+							count += write(slice, out);
+							buffer.position(end);
+							mode = eol < 0 ? Mode.PASS : Mode.HEAD;
+							break;
+						}
+
+						int length = Math.min(end - start, head.remaining());
+						head.put(data, start, length);
+						buffer.position(start + length);
+
+						boolean complete = eol >= 0 && start + length == end;
+						if (!complete && head.hasRemaining()) {
+							break;
+						}
+
+						head.flip();
+						if (keep(head.array(), 0, head.limit())) {
+							count += write(head, out);
+							mode = complete ? Mode.HEAD : Mode.PASS;
+
+						} else {
+							mode = complete ? Mode.HEAD : Mode.SKIP;
+						}
+						head.clear();
+						break;
+
+					case PASS:
+						ByteBuffer slice = buffer.duplicate();
+						slice.limit(end);
+						count += write(slice, out);
+						buffer.position(end);
+						mode = eol < 0 ? Mode.PASS : Mode.HEAD;
+						break;
+
+					case SKIP:
+						buffer.position(end);
+						mode = eol < 0 ? Mode.SKIP : Mode.HEAD;
+						break;
+
+					default:
+						throw new UnhandledCaseException(mode);
+				}
+			}
+
+			buffer.clear();
+		}
+
+		// last line without a line feed
+		if (head.position() > 0) {
+			head.flip();
+			if (keep(head.array(), 0, head.limit())) {
+				count += write(head, out);
+			}
+		}
+
+		return count;
+	}
+
+	private boolean keep(byte[] data, int from, int to) {
+		for (byte[] prefix : prefixes) {
+			if (to - from >= prefix.length && startsWith(data, from, prefix)) {
+				return false;
+			}
+		}
+
+		for (byte[] needle : needles) {
+			if (contains(data, from, to, needle)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean startsWith(byte[] data, int from, byte[] prefix) {
+		for (int i = 0; i < prefix.length; i++) {
+			if (data[from + i] != prefix[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean contains(byte[] data, int from, int to, byte[] needle) {
+		byte first = needle[0];
+		int last = to - needle.length;
+
+		for (int i = from; i <= last; i++) {
+			if (data[i] == first && startsWith(data, i, needle)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static int indexOf(byte[] data, byte b, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (data[i] == b) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private static int write(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+		int count = buffer.remaining();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		return count;
+	}
+
+	private static byte[][] toBytes(String[] strings) {
+		return Arrays.stream(strings)
+				.peek(string -> Check.notEmpty(string))
+				.map(string -> string.getBytes(StandardCharsets.UTF_8))
+				.toArray(byte[][]::new);
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public final class Parallel {
+
+	private Parallel() {
+	}
+
+	/**
+	 * Runs the tasks in order on at most the given number of threads and
+	 * waits for all of them.
+	 *
+	 * @param jobs
+	 * @param tasks
+	 * @return true if every task succeeded
+	 */
+	public static boolean run(int jobs, List<Callable<Boolean>> tasks) {
+		Check.positive(jobs);
+		Check.noneNull(tasks);
+
+		if (tasks.isEmpty()) {
+			return true;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobs, tasks.size()));
+
+		try {
+			List<Future<Boolean>> futures = new ArrayList<>();
+			for (Callable<Boolean> task : tasks) {
+				futures.add(executor.submit(task));
+			}
+
+			boolean success = true;
+			for (Future<Boolean> future : futures) {
+				try {
+					if (!Boolean.TRUE.equals(future.get())) {
+						success = false;
+					}
+
+				} catch (ExecutionException e) {
+					Exceptions.print(e.getCause(), System.err);
+					success = false;
+				}
+			}
+
+			return success;
+
+		} catch (InterruptedException e) {
+			return false;
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
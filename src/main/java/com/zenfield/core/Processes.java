@@ -21,15 +21,15 @@
  */
 package com.zenfield.core;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Writer;
+import java.io.OutputStream;
 import java.util.List;
-import java.util.function.Predicate;
 
 /**
  *
@@ -37,6 +37,8 @@ import java.util.function.Predicate;
  */
 public class Processes {
 
+	private static final int BUFFER_SIZE = 65536;
+
 	public static Integer execute(String command, List<String> output) throws IOException {
 		Check.notEmpty(command);
 		Check.notNull(output);
@@ -85,12 +87,100 @@ public class Processes {
 		}
 	}
 
+	/**
+	 * Executes the process while writing the feed into its standard input on
+	 * a separate thread. The output of the process is collected into the
+	 * list. If the feed fails, the process is destroyed and the error is
+	 * thrown.
+	 *
+	 * @param builder
+	 * @param feed
+	 * @param output
+	 * @return the exit code
+	 * @throws IOException
+	 */
+	public static Integer execute(ProcessBuilder builder, Feed feed, List<String> output) throws IOException {
+		Check.notNull(builder);
+		Check.notNull(feed);
+		Check.notNull(output);
+
+		builder.redirectInput(ProcessBuilder.Redirect.PIPE);
+		builder.redirectOutput(ProcessBuilder.Redirect.PIPE);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+		Process process = builder.start();
+		Feeder feeder = new Feeder(process, feed);
+		feeder.start();
+
+		Integer exitCode = execute(process, output);
+		return finish(feeder, exitCode);
+	}
+
+	/**
+	 * Executes the process while writing the feed into its standard input on
+	 * a separate thread. The output of the process is inherited.
+	 *
+	 * @param builder
+	 * @param feed
+	 * @return the exit code
+	 * @throws IOException
+	 */
+	public static Integer execute(ProcessBuilder builder, Feed feed) throws IOException {
+		Check.notNull(builder);
+		Check.notNull(feed);
+
+		builder.redirectInput(ProcessBuilder.Redirect.PIPE);
+		builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+		Process process = builder.start();
+		Feeder feeder = new Feeder(process, feed);
+		feeder.start();
+
+		try {
+			return finish(feeder, process.waitFor());
+
+		} catch (InterruptedException e) {
+			process.destroy();
+			return null;
+		}
+	}
+
+	private static Integer finish(Feeder feeder, Integer exitCode) throws IOException {
+		Check.notNull(feeder);
+		// exitCode
+
+		try {
+			feeder.join();
+
+		} catch (InterruptedException e) {
+			return null;
+		}
+
+		if (feeder.error != null) {
+			throw new IOException("Cannot feed the process: " + feeder.error.getMessage(), feeder.error);
+		}
+
+		return exitCode;
+	}
+
 	public static Integer save(ProcessBuilder builder, File output) throws IOException {
-		return save(builder, line -> true, output);
+		return save(builder, LineFilter.NONE, output);
 	}
 
-	public static Integer save(ProcessBuilder builder, Predicate<String> filter, File output) throws IOException {
+	public static Integer save(ProcessBuilder builder, LineFilter filter, File output) throws IOException {
 		Check.notNull(builder);
+		Check.notNull(filter);
+		Check.notNull(output);
+
+		try (OutputStream out = new FileOutputStream(output)) {
+			return save(builder, filter, out);
+		}
+	}
+
+	public static Integer save(ProcessBuilder builder, LineFilter filter, OutputStream output) throws IOException {
+		Check.notNull(builder);
+		Check.notNull(filter);
 		Check.notNull(output);
 
 		builder.redirectOutput(ProcessBuilder.Redirect.PIPE);
@@ -98,7 +188,17 @@ public class Processes {
 		return save(builder.start(), filter, output);
 	}
 
-	public static Integer save(Process process, Predicate<String> filter, File output) throws IOException {
+	/**
+	 * Writes the filtered output of the process into the stream. The stream
+	 * is flushed but not closed.
+	 *
+	 * @param process
+	 * @param filter
+	 * @param output
+	 * @return the exit code
+	 * @throws IOException
+	 */
+	public static Integer save(Process process, LineFilter filter, OutputStream output) throws IOException {
 		Check.notNull(process);
 		Check.notNull(filter);
 		Check.notNull(output);
@@ -108,26 +208,9 @@ public class Processes {
 			return null;
 		}
 
-		BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-
-		Writer writer = null;
-
 		try {
-			writer = new FileWriter(output);
-
-			for (;;) {
-				String line = reader.readLine();
-				if (line == null) {
-					break;
-				}
-
-				if (!filter.test(line)) {
-					continue;
-				}
-
-				writer.write(line);
-				writer.write('\n');
-			}
+			filter.copy(is, output);
+			output.flush();
 
 			try {
 				return process.waitFor();
@@ -136,15 +219,74 @@ public class Processes {
 				return null;
 			}
 
+		} catch (IOException e) {
+			process.destroy();
+			throw e;
+
 		} finally {
-			Closeables.close(reader);
-			Closeables.close(writer);
+			Closeables.close(is);
 		}
 	}
 
+	/**
+	 * Feeds the output of the process, which is started when the feed is
+	 * written. The process is blocked while its output is not consumed. If
+	 * the process does not exit with 0, the feed throws after passing on the
+	 * output written so far.
+	 *
+	 * @param builder
+	 * @return the feed
+	 */
+	public static Feed feed(ProcessBuilder builder) {
+		Check.notNull(builder);
+
+		return out -> {
+			Integer exitCode = save(builder, LineFilter.NONE, out);
+
+			if (exitCode == null) {
+				throw new IOException("No exit code: " + String.join(" ", builder.command()));
+			}
+
+			if (exitCode != 0) {
+				throw new IOException("Exit code was " + exitCode + ": " + String.join(" ", builder.command()));
+			}
+		};
+	}
+
 	public static void destroy(Process process) {
 		if (process != null) {
 			process.destroy();
 		}
 	}
+
+	private static class Feeder extends Thread {
+
+		private final Process process;
+		private final Feed feed;
+		private volatile Exception error;
+
+		public Feeder(Process process, Feed feed) {
+			Check.notNull(process);
+			Check.notNull(feed);
+
+			this.process = process;
+			this.feed = feed;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			OutputStream out = new BufferedOutputStream(process.getOutputStream(), BUFFER_SIZE);
+
+			try {
+				feed.write(out);
+				out.close();
+
+			} catch (IOException | RuntimeException e) {
+				error = e;
+				process.destroy();
+				Closeables.close(process.getOutputStream());
+			}
+		}
+	}
 }
@@ -0,0 +1,710 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Splits SQL scripts into statements without decoding them. Quotes, comments,
+ * MySQL backtick identifiers and DELIMITER commands, PostgreSQL dollar quotes,
+ * psql meta-commands and the data blocks of COPY ... FROM stdin are
+ * recognized. The tokens are ranges of the input; files are memory-mapped in
+ * windows that are moved forward as the script is read.
+ *
+ * <p>
+ * The data of a COPY block may be returned in several consecutive
+ * {@link Kind#DATA} tokens of complete lines. The terminating line of the
+ * block is not part of the data.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public final class SqlLexer implements Closeable {
+
+	public static final int WINDOW = 256 * 1024 * 1024;
+
+	private static final byte[] DEFAULT_DELIMITER = {';'};
+	private static final Pattern COPY_FROM_STDIN = Pattern.compile("(?is)^COPY\\b.*\\bFROM\\s+STDIN\\b.*");
+
+	public static enum Syntax {
+		MYSQL, POSTGRES
+	}
+
+	public static enum Kind {
+		/**
+		 * A statement without its delimiter.
+		 */
+		STATEMENT,
+		/**
+		 * A client command, a DELIMITER line or a psql meta-command.
+		 */
+		COMMAND,
+		/**
+		 * Lines of the data of a COPY ... FROM stdin statement.
+		 */
+		DATA
+	}
+
+	private static enum State {
+		CODE, SINGLE_QUOTE, DOUBLE_QUOTE, BACKTICK, LINE_COMMENT, BLOCK_COMMENT, DOLLAR_QUOTE
+	}
+
+	private final Syntax syntax;
+	private final FileChannel channel;
+	private final long size;
+
+	private ByteBuffer buffer;
+	private long base;
+	private int position;
+	private int window;
+
+	private byte[] delimiter = DEFAULT_DELIMITER;
+	private boolean data;
+
+	private Kind kind;
+	private int start;
+	private int end;
+
+	private SqlLexer(Syntax syntax, FileChannel channel, long size, ByteBuffer buffer) {
+		Check.notNull(syntax);
+		// channel
+		Check.notNull(buffer);
+
+		this.syntax = syntax;
+		this.channel = channel;
+		this.size = size;
+		this.buffer = buffer;
+		this.window = WINDOW;
+	}
+
+	public static SqlLexer of(ByteBuffer buffer, Syntax syntax) {
+		Check.notNull(buffer);
+		Check.notNull(syntax);
+
+		ByteBuffer slice = buffer.slice();
+		return new SqlLexer(syntax, null, slice.limit(), slice);
+	}
+
+	/**
+	 * Maps the file into memory in windows of {@link #WINDOW} bytes. A window
+	 * grows if a single statement does not fit into it.
+	 *
+	 * @param file
+	 * @param syntax
+	 * @return the lexer, it must be closed
+	 * @throws IOException
+	 */
+	public static SqlLexer open(File file, Syntax syntax) throws IOException {
+		Check.notNull(file);
+		Check.notNull(syntax);
+
+		FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+
+		try {
+			long size = channel.size();
+			return new SqlLexer(syntax, channel, size, channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW)));
+
+		} catch (IOException | RuntimeException e) {
+			Closeables.close(channel);
+			throw e;
+		}
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the delimiter of the statements at the current token
+	 */
+	public String getDelimiter() {
+		return new String(delimiter, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return true if the current token is a statement followed by a COPY
+	 * data block, which may be empty
+	 */
+	public boolean hasData() {
+		return kind == Kind.STATEMENT && data;
+	}
+
+	/**
+	 * @return the offset of the token in the input
+	 */
+	public long getStart() {
+		return base + start;
+	}
+
+	/**
+	 * @return the offset after the token in the input
+	 */
+	public long getEnd() {
+		return base + end;
+	}
+
+	/**
+	 * @return a read-only view of the bytes of the token, valid until the
+	 * next token is read
+	 */
+	public ByteBuffer getBytes() {
+		ByteBuffer bytes = buffer.asReadOnlyBuffer();
+		bytes.limit(end);
+		bytes.position(start);
+		return bytes.slice();
+	}
+
+	public String getText() {
+		return StandardCharsets.UTF_8.decode(getBytes()).toString();
+	}
+
+	/**
+	 * @param keywords
+	 * @return true if the token starts with the words, separated by any
+	 * whitespace and ignoring the case
+	 */
+	public boolean startsWith(String... keywords) {
+		Check.notEmpty(keywords);
+
+		int i = start;
+		for (String keyword : keywords) {
+			while (i < end && isWhitespace(buffer.get(i))) {
+				i++;
+			}
+
+			if (!regionMatches(i, keyword)) {
+				return false;
+			}
+
+			i += keyword.length();
+			if (i < end && isIdentifier(buffer.get(i))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Moves to the next token.
+	 *
+	 * @return false at the end of the input
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			int result = data ? scanData() : scanStatement();
+			if (result > 0) {
+				return true;
+			}
+
+			if (result < 0) {
+				kind = null;
+				return false;
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		Closeables.close(channel);
+	}
+
+	/**
+	 * @return 1 for a token, -1 at the end, 0 if the window was moved and the
+	 * scan must be repeated
+	 */
+	private int scanStatement() throws IOException {
+		int limit = buffer.limit();
+		int i = position;
+
+		// whitespace and comments between the statements are skipped
+		while (true) {
+			while (i < limit && isWhitespace(buffer.get(i))) {
+				i++;
+			}
+
+			if (i >= limit) {
+				break;
+			}
+
+			int comment = skipComment(i, limit);
+			if (comment == i) {
+				break;
+			}
+
+			if (comment < 0) {
+				return isLast() ? -1 : move(i);
+			}
+
+			i = comment;
+		}
+
+		if (i >= limit) {
+			return isLast() ? -1 : move(i);
+		}
+
+		if (isCommandStart(i, limit)) {
+			int eol = indexOf((byte) '\n', i, limit);
+			if (eol < 0 && !isLast()) {
+				return move(i);
+			}
+
+			int lineEnd = eol < 0 ? limit : eol;
+			setToken(Kind.COMMAND, i, trimEnd(i, lineEnd));
+			position = eol < 0 ? limit : eol + 1;
+
+			if (syntax == Syntax.MYSQL) {
+				// DELIMITER <delimiter>
+				int d = i + "DELIMITER".length();
+				while (d < end && isWhitespace(buffer.get(d))) {
+					d++;
+				}
+
+				byte[] bytes = new byte[end - d];
+				for (int k = 0; k < bytes.length; k++) {
+					bytes[k] = buffer.get(d + k);
+				}
+
+				delimiter = bytes.length == 0 ? DEFAULT_DELIMITER : bytes;
+			}
+
+			return 1;
+		}
+
+		int statement = i;
+		State state = State.CODE;
+		boolean escapes = false;
+		int depth = 0;
+		int tag = 0;
+		int tagLength = 0;
+
+		while (i < limit) {
+			byte b = buffer.get(i);
+
+			switch (state) {
+				case CODE:
+					if (b == delimiter[0] && regionMatches(i, delimiter)) {
+						if (i == statement) {
+							// empty statement
+							position = i + delimiter.length;
+							return 0;
+						}
+
+						setToken(Kind.STATEMENT, statement, trimEnd(statement, i));
+						position = i + delimiter.length;
+						data = syntax == Syntax.POSTGRES && isCopyFromStdin();
+						if (data) {
+							// the data starts on the next line
+							int eol = indexOf((byte) '\n', position, limit);
+							if (eol < 0 && !isLast()) {
+								data = false;
+								return move(statement);
+							}
+
+							position = eol < 0 ? limit : eol + 1;
+						}
+
+						return 1;
+					}
+
+					if (b == '\'') {
+						state = State.SINGLE_QUOTE;
+						escapes = syntax == Syntax.MYSQL
+								|| (i > statement && (buffer.get(i - 1) == 'E' || buffer.get(i - 1) == 'e')
+								&& (i - 1 == statement || !isIdentifier(buffer.get(i - 2))));
+
+					} else if (b == '"') {
+						state = State.DOUBLE_QUOTE;
+						escapes = syntax == Syntax.MYSQL;
+
+					} else if (b == '`' && syntax == Syntax.MYSQL) {
+						state = State.BACKTICK;
+
+					} else if (b == '$' && syntax == Syntax.POSTGRES && (i == statement || !isIdentifier(buffer.get(i - 1)))) {
+						int j = i + 1;
+						if (j < limit && !isDigit(buffer.get(j))) {
+							while (j < limit && isIdentifier(buffer.get(j)) && buffer.get(j) != '$') {
+								j++;
+							}
+
+							if (j < limit && buffer.get(j) == '$') {
+								state = State.DOLLAR_QUOTE;
+								tag = i;
+								tagLength = j - i + 1;
+								i = j;
+							}
+						}
+
+					} else {
+						int comment = commentStart(i, limit);
+						if (comment == 1) {
+							state = State.LINE_COMMENT;
+						} else if (comment == 2) {
+							state = State.BLOCK_COMMENT;
+							depth = 1;
+							i++;
+						}
+					}
+					break;
+
+				case SINGLE_QUOTE:
+				case DOUBLE_QUOTE:
+				case BACKTICK:
+					// the inside of the quotes is most of the data of a dump
+					byte quote = quoteOf(state);
+					while (b != quote) {
+						if (escapes && b == '\\') {
+							i++;
+						}
+
+						if (++i >= limit) {
+							break;
+						}
+
+						b = buffer.get(i);
+					}
+
+					if (b == quote) {
+						state = State.CODE;
+					}
+					break;
+
+				case LINE_COMMENT:
+					if (b == '\n') {
+						state = State.CODE;
+					}
+					break;
+
+				case BLOCK_COMMENT:
+					if (b == '*' && i + 1 < limit && buffer.get(i + 1) == '/') {
+						i++;
+						if (--depth == 0) {
+							state = State.CODE;
+						}
+					} else if (b == '/' && syntax == Syntax.POSTGRES && i + 1 < limit && buffer.get(i + 1) == '*') {
+						// nested comments
+						i++;
+						depth++;
+					}
+					break;
+
+				case DOLLAR_QUOTE:
+					if (b == '$' && regionMatches(i, tag, tagLength)) {
+						i += tagLength - 1;
+						state = State.CODE;
+					}
+					break;
+
+				default:
+					throw new UnhandledCaseException(state);
+			}
+
+			i++;
+		}
+
+		if (!isLast()) {
+			return move(statement);
+		}
+
+		// the last statement without a delimiter
+		position = limit;
+		setToken(Kind.STATEMENT, statement, trimEnd(statement, limit));
+		return 1;
+	}
+
+	private int scanData() throws IOException {
+		int limit = buffer.limit();
+		int line = position;
+
+		while (line < limit) {
+			if (isDataEnd(line, limit)) {
+				data = false;
+				int eol = indexOf((byte) '\n', line, limit);
+				int next = eol < 0 ? limit : eol + 1;
+
+				if (line > position) {
+					setToken(Kind.DATA, position, line);
+					position = next;
+					return 1;
+				}
+
+				position = next;
+				return 0;
+			}
+
+			int eol = indexOf((byte) '\n', line, limit);
+			if (eol < 0) {
+				break;
+			}
+
+			line = eol + 1;
+		}
+
+		if (isLast()) {
+			// no terminator, the rest is data
+			data = false;
+			if (limit > position) {
+				setToken(Kind.DATA, position, limit);
+				position = limit;
+				return 1;
+			}
+
+			return -1;
+		}
+
+		// the complete lines are returned before the window is moved
+		if (line > position) {
+			setToken(Kind.DATA, position, line);
+			position = line;
+			return 1;
+		}
+
+		return move(position);
+	}
+
+	private boolean isDataEnd(int i, int limit) {
+		if (i + 1 >= limit || buffer.get(i) != '\\' || buffer.get(i + 1) != '.') {
+			return false;
+		}
+
+		if (i + 2 == limit) {
+			return isLast();
+		}
+
+		byte next = buffer.get(i + 2);
+		return next == '\n' || next == '\r';
+	}
+
+	private boolean isCommandStart(int i, int limit) {
+		switch (syntax) {
+			case MYSQL:
+				int after = i + "DELIMITER".length();
+				return regionMatches(i, "DELIMITER") && (after >= limit || isWhitespace(buffer.get(after)));
+
+			case POSTGRES:
+				return buffer.get(i) == '\\';
+
+			default:
+				throw new UnhandledCaseException(syntax);
+		}
+	}
+
+	private boolean isCopyFromStdin() {
+		return startsWith("COPY") && COPY_FROM_STDIN.matcher(getText()).matches();
+	}
+
+	/**
+	 * @return the index after the comment, the index itself if there is no
+	 * comment, or -1 if the comment does not end in the window
+	 */
+	private int skipComment(int i, int limit) {
+		int comment = commentStart(i, limit);
+		if (comment == 0) {
+			return i;
+		}
+
+		// the executable comments of MySQL are statements
+		if (comment == 2 && syntax == Syntax.MYSQL && i + 2 < limit && buffer.get(i + 2) == '!') {
+			return i;
+		}
+
+		if (comment == 1) {
+			int eol = indexOf((byte) '\n', i, limit);
+			if (eol < 0) {
+				return isLast() ? limit : -1;
+			}
+
+			return eol + 1;
+		}
+
+		int depth = 1;
+		for (int j = i + 2; j + 1 < limit; j++) {
+			byte b = buffer.get(j);
+			if (b == '*' && buffer.get(j + 1) == '/') {
+				j++;
+				if (--depth == 0) {
+					return j + 1;
+				}
+			} else if (b == '/' && syntax == Syntax.POSTGRES && buffer.get(j + 1) == '*') {
+				j++;
+				depth++;
+			}
+		}
+
+		return isLast() ? limit : -1;
+	}
+
+	/**
+	 * @return 1 for a line comment, 2 for a block comment, 0 otherwise
+	 */
+	private int commentStart(int i, int limit) {
+		byte b = buffer.get(i);
+		byte next = i + 1 < limit ? buffer.get(i + 1) : 0;
+
+		if (b == '-' && next == '-') {
+			// MySQL needs a whitespace after the dashes
+			if (syntax == Syntax.MYSQL) {
+				byte after = i + 2 < limit ? buffer.get(i + 2) : (byte) '\n';
+				return isWhitespace(after) || after < 32 ? 1 : 0;
+			}
+
+			return 1;
+		}
+
+		if (b == '#' && syntax == Syntax.MYSQL) {
+			return 1;
+		}
+
+		if (b == '/' && next == '*') {
+			return 2;
+		}
+
+		return 0;
+	}
+
+	private void setToken(Kind kind, int start, int end) {
+		this.kind = kind;
+		this.start = start;
+		this.end = end;
+	}
+
+	private boolean isLast() {
+		return base + buffer.limit() >= size;
+	}
+
+	/**
+	 * Maps the next window from the index. The window is doubled if nothing
+	 * would be gained by moving it.
+	 *
+	 * @return 0
+	 */
+	private int move(int from) throws IOException {
+		if (from == 0) {
+			if (window >= Integer.MAX_VALUE / 2) {
+				throw new IOException("Statement too large at offset " + base);
+			}
+
+			window *= 2;
+		}
+
+		long offset = base + from;
+		long length = Math.min(size - offset, window);
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		base = offset;
+		position = 0;
+		return 0;
+	}
+
+	private int indexOf(byte b, int from, int limit) {
+		for (int i = from; i < limit; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private int trimEnd(int from, int to) {
+		int i = to;
+		while (i > from && isWhitespace(buffer.get(i - 1))) {
+			i--;
+		}
+
+		return i;
+	}
+
+	private boolean regionMatches(int i, String keyword) {
+		if (i + keyword.length() > buffer.limit()) {
+			return false;
+		}
+
+		for (int k = 0; k < keyword.length(); k++) {
+			int b = buffer.get(i + k);
+			if (Character.toUpperCase(b) != Character.toUpperCase(keyword.charAt(k))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean regionMatches(int i, byte[] bytes) {
+		if (i + bytes.length > buffer.limit()) {
+			return false;
+		}
+
+		for (int k = 0; k < bytes.length; k++) {
+			if (buffer.get(i + k) != bytes[k]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean regionMatches(int i, int other, int length) {
+		if (i + length > buffer.limit()) {
+			return false;
+		}
+
+		for (int k = 0; k < length; k++) {
+			if (buffer.get(i + k) != buffer.get(other + k)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static byte quoteOf(State state) {
+		switch (state) {
+			case SINGLE_QUOTE:
+				return '\'';
+			case DOUBLE_QUOTE:
+				return '"';
+			case BACKTICK:
+				return '`';
+			default:
+				throw new UnhandledCaseException(state);
+		}
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f';
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isIdentifier(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || isDigit(b) || b == '_' || b == '$' || b < 0;
+	}
+}
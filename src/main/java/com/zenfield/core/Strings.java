@@ -41,4 +41,17 @@ public final class Strings {
 	public static final boolean isEqualIgnoreCase(String one, String two) {
 		return one != null && one.equalsIgnoreCase(two);
 	}
+
+	public static long toLong(String s, long defaultValue) {
+		if (isEmpty(s)) {
+			return defaultValue;
+		}
+
+		try {
+			return Long.parseLong(s.trim());
+
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
 }
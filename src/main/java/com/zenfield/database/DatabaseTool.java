@@ -35,6 +35,7 @@ import com.zenfield.database.command.FetchCommand;
 import com.zenfield.database.command.PopulateCommand;
 import com.zenfield.database.command.InfoCommand;
 import com.zenfield.database.command.LoadCommand;
+import com.zenfield.database.command.SnapshotCommand;
 import com.zenfield.database.command.StoreCommand;
 import com.zenfield.database.configuration.Parameters;
 
@@ -51,33 +52,63 @@ public class DatabaseTool {
 			+ "\n"
 			+ "  info <environment>\n"
 			+ "  - shows a summary about the database\n"
+			+ "  - the row counts and sizes are estimated from the catalog\n"
+			+ "  - with --exact the rows are counted, on --jobs sessions in parallel\n"
 			+ "\n"
 			+ "  dump <environment>\n"
 			+ "  - dumps the database\n"
+			+ "  - with --jobs the tables and the ranges of large tables are dumped in parallel\n"
+			+ "  - with database.backend=parallel a directory archive is dumped with all cores\n"
+			+ "    by pg_dump or mydumper, MySQL falls back to mysqldump without mydumper\n"
 			+ "\n"
 			+ "  load <file>\n"
 			+ "  - clear the database and loads the file\n"
+			+ "  - directory archives are restored in parallel\n"
+			+ "  - with --commit-every or --commit-size the file is committed in chunks, an\n"
+			+ "    interrupted load continues after the last committed chunk\n"
 			+ "\n"
 			+ "  clear <environment>\n"
 			+ "  - clears the database\n"
 			+ "\n"
 			+ "  create <environment>\n"
 			+ "  - clears and creates the database based on the create-all.sql script\n"
+			+ "  - if the database was created by the same script and its schema did not change,\n"
+			+ "    the tables are only emptied; not if the script inserts data\n"
 			+ "\n"
 			+ "  populate <directory> <environment>\n"
 			+ "  - clears, creates and populates the database\n"
+			+ "  - an unchanged schema is only emptied, as by create\n"
 			+ "  - the command lists all files from the directory in order\n"
 			+ "  - *.sql files will be directly executed\n"
 			+ "  - the output of the executable files will be also be executed\n"
+			+ "  - with --defer-indexes the non-unique indexes and the foreign keys are built\n"
+			+ "    after the data, on --jobs sessions; the unique indexes are kept\n"
+			+ "  - with --jobs the files run on parallel sessions, a file waits for the earlier\n"
+			+ "    files of the same tables or of tables linked by foreign keys, files with DDL\n"
+			+ "    and executable files run alone; the schedule and the speedup are printed\n"
 			+ "\n"
 			+ "  fetch <environment>\n"
 			+ "  - clears the database\n"
 			+ "  - fetches data from a remote database\n"
 			+ "  - dumps the data into the local database\n"
+			+ "  - with --stream the dump is loaded while it is being fetched\n"
+			+ "  - with --jobs the tables and the ranges of large tables are fetched in parallel\n"
+			+ "    from a consistent snapshot, with --defer-indexes the indexes of the schema\n"
+			+ "    are built after the data\n"
+			+ "  - with database.backend=parallel the database is fetched as a directory archive\n"
 			+ "\n"
 			+ "  store <directory>\n"
 			+ "  - stores data from the local database in a directory per table\n"
 			+ "  - tables with corresponding files names as e.g. ACCOUNT.skip will be skipped\n"
+			+ "  - with --jobs the tables and the ranges of large tables are dumped in parallel\n"
+			+ "\n"
+			+ "  snapshot save|restore|drop <name>\n"
+			+ "  - saves the database as a named copy on the server, or replaces the database\n"
+			+ "    with a saved copy; PostgreSQL copies by CREATE DATABASE ... TEMPLATE, which\n"
+			+ "    terminates the other connections, MySQL copies the tables into a schema\n"
+			+ "\n"
+			+ "  snapshot list\n"
+			+ "  - lists the saved copies of the database\n"
 			+ "\n"
 			+ "Options:\n"
 			+ "\n"
@@ -89,6 +120,57 @@ public class DatabaseTool {
 			+ "\n"
 			+ "  -s or --skip-hooks\n"
 			+ "    do not run any hooks\n"
+			+ "\n"
+			+ "  --stream\n"
+			+ "    fetch without a temporary file, the destination is cleared before the dump\n"
+			+ "\n"
+			+ "  --exact\n"
+			+ "    count the rows of the tables instead of the estimates of the catalog\n"
+			+ "\n"
+			+ "  -j <n> or --jobs <n>\n"
+			+ "    number of parallel workers, the largest tables are scheduled first\n"
+			+ "    directory archives use all cores by default\n"
+			+ "\n"
+			+ "  --defer-indexes\n"
+			+ "    drop the secondary indexes and the foreign keys before the data is loaded\n"
+			+ "    and build them in parallel afterwards\n"
+			+ "\n"
+			+ "  --commit-every <n>\n"
+			+ "    load commits after every n statements instead of one transaction\n"
+			+ "\n"
+			+ "  --commit-size <MB>\n"
+			+ "    load commits after every MB of the file instead of one transaction\n"
+			+ "\n"
+			+ "Project settings:\n"
+			+ "\n"
+			+ "  database.post-load.analyze=true\n"
+			+ "    update the statistics of every table after fetch and load, in parallel\n"
+			+ "\n"
+			+ "  database.post-load.prewarm=<table>, <table>\n"
+			+ "    read the tables into the cache of the server after fetch and load, pg_prewarm\n"
+			+ "    must be installed on PostgreSQL, MySQL reads the primary key only\n"
+			+ "\n"
+			+ "  database.populate.layers=<MB>\n"
+			+ "    save the database on the server after each step of populate and restore the\n"
+			+ "    last unchanged step next time, the least recently used steps are dropped\n"
+			+ "    above the size, not used with --defer-indexes or bulk-load=unlogged\n"
+			+ "\n"
+			+ "  database.populate.cache=<MB>\n"
+			+ "    keep the output of the executable populate files compressed in ~/.db-cache\n"
+			+ "    and load it instead of running the file while the file, the other files of\n"
+			+ "    its directory and the inputs listed in <file>.inputs are unchanged, the least\n"
+			+ "    recently used outputs are deleted above the size\n"
+			+ "\n"
+			+ "Environment settings:\n"
+			+ "\n"
+			+ "  bulk-load=true\n"
+			+ "    relax the checks and the durability while fetch, load and populate load data,\n"
+			+ "    foreign_key_checks, unique_checks and sql_log_bin on MySQL, synchronous_commit\n"
+			+ "    and session_replication_role on PostgreSQL, only with readonly=false\n"
+			+ "\n"
+			+ "  bulk-load=unlogged\n"
+			+ "    PostgreSQL also switches the tables to unlogged during populate and\n"
+			+ "    fetch --jobs, and back to logged at the end\n"
 			+ "\n";
 
 	private final ProjectConfiguration configuration;
@@ -130,7 +212,13 @@ public class DatabaseTool {
 		System.err.println();
 		System.err.println();
 
-		boolean success = command.run(environment);
+		boolean success;
+		try {
+			success = command.run(environment);
+		} finally {
+			command.close();
+		}
+
 		System.exit(success ? 0 : 1);
 	}
 
@@ -306,6 +394,17 @@ public class DatabaseTool {
 
 				return new StoreCommand(configuration, parameters, parameters.getArgument(0));
 
+			case "snapshot":
+				SnapshotCommand.Action action = parameters.countArguments() == 0 ? null : SnapshotCommand.Action.parse(parameters.getArgument(0));
+				if (action == null || parameters.countArguments() != (action == SnapshotCommand.Action.LIST ? 1 : 2)) {
+					System.err.println("Error: invalid arguments");
+					System.err.println();
+					System.err.println(HELP);
+					return null;
+				}
+
+				return new SnapshotCommand(configuration, parameters, action, action == SnapshotCommand.Action.LIST ? null : parameters.getArgument(1), environment);
+
 			default:
 				System.err.println("Error: unknown command: " + parameters.getCommand());
 				System.err.println();
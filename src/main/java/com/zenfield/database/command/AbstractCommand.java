@@ -22,14 +22,33 @@
 package com.zenfield.database.command;
 
 import com.zenfield.core.Check;
+import com.zenfield.core.Digest;
+import com.zenfield.core.Exceptions;
+import com.zenfield.core.Feed;
+import com.zenfield.core.Parallel;
+import com.zenfield.core.SqlLexer;
 import com.zenfield.core.UnhandledCaseException;
 import com.zenfield.database.Confirm;
 import com.zenfield.database.configuration.Environment;
 import com.zenfield.database.configuration.Parameters;
 import com.zenfield.database.configuration.ProjectConfiguration;
+import com.zenfield.database.dialect.DeferredBuild;
 import com.zenfield.database.dialect.Dialect;
+import com.zenfield.database.dialect.Range;
+import com.zenfield.database.dialect.Session;
+import com.zenfield.database.dialect.SessionPool;
+import com.zenfield.database.dialect.TableInfo;
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -37,8 +56,15 @@ import java.util.Arrays;
  */
 abstract public class AbstractCommand implements Command {
 
+	private static final long MIN_CHUNK_BYTES = 64L * 1024 * 1024;
+	private static final int CHUNKS_PER_JOB = 4;
+	private static final int MAX_CHUNKS = 256;
+	private static final int POST_LOAD_JOBS = 4;
+	private static final List<String> DATA_STATEMENTS = Arrays.asList("INSERT", "REPLACE", "COPY", "LOAD", "UPDATE", "DELETE");
+
 	private final ProjectConfiguration configuration;
 	private final Parameters parameters;
+	private final Map<String, Session> sessions = new HashMap<>();
 
 	public AbstractCommand(ProjectConfiguration configuration, Parameters parameters) {
 		Check.notNull(configuration);
@@ -90,7 +116,7 @@ abstract public class AbstractCommand implements Command {
 				return true;
 			}
 
-			if (!configuration.getDialect().execute(destination, source)) {
+			if (!execute(destination, source)) {
 				System.err.println("Could not run the " + hook + " hook: " + source);
 				return false;
 			}
@@ -116,7 +142,7 @@ abstract public class AbstractCommand implements Command {
 					}
 				}
 
-				if (!configuration.getDialect().execute(destination, file)) {
+				if (!execute(destination, file)) {
 					System.err.println("Could not run the " + hook + " hook: " + file.getName());
 					return false;
 				}
@@ -130,4 +156,323 @@ abstract public class AbstractCommand implements Command {
 		System.err.println("Invalid hook, not a file nor a directory, " + hook + " at " + source);
 		return true;
 	}
+
+	/**
+	 * Executes the script on the session of the environment. The session is
+	 * opened on first use and reopened after a failed script.
+	 *
+	 * @param destination
+	 * @param script
+	 * @return success
+	 */
+	protected final boolean execute(Environment destination, File script) {
+		Check.notNull(destination);
+		Check.notNull(script);
+
+		Session session = getSession(destination);
+		return session != null && session.execute(script);
+	}
+
+	/**
+	 * Executes a script that loads data like {@link #execute(Environment, File)}
+	 * but with the bulk load profile of the environment.
+	 *
+	 * @param destination
+	 * @param script
+	 * @return success
+	 */
+	protected final boolean executeBulk(Environment destination, File script) {
+		Check.notNull(destination);
+		Check.notNull(script);
+
+		if (!script.isFile()) {
+			System.err.println("File not found: " + script.getName());
+			return false;
+		}
+
+		return executeBulk(destination, Feed.of(script));
+	}
+
+	/**
+	 * @param destination
+	 * @param script
+	 * @return success
+	 * @see #executeBulk(Environment, File)
+	 */
+	protected final boolean executeBulk(Environment destination, Feed script) {
+		Check.notNull(destination);
+		Check.notNull(script);
+
+		Session session = getSession(destination);
+		return session != null && session.execute(getDialect().bulkLoad(destination, script));
+	}
+
+	/**
+	 * Empties the tables if the database was created by the current create
+	 * script and its schema did not change since. Otherwise clears the
+	 * database, executes the create script and records its fingerprint.
+	 *
+	 * @param destination
+	 * @return success
+	 */
+	protected final boolean recreate(Environment destination) {
+		Check.notNull(destination);
+
+		File create = configuration.getCreate();
+		String fingerprint = fingerprint(create);
+
+		if (fingerprint != null && getDialect().truncate(destination, fingerprint, parameters.getJobs(Runtime.getRuntime().availableProcessors()))) {
+			System.err.println("Database emptied, the schema is unchanged");
+			return true;
+		}
+
+		if (!getDialect().clear(destination)) {
+			System.err.println("Cannot clear the database");
+			return false;
+		}
+
+		System.err.println("Database cleared");
+
+		if (!execute(destination, create)) {
+			System.err.println("Cannot create the database");
+			return false;
+		}
+
+		System.err.println("Database created");
+
+		if (fingerprint != null && !getDialect().saveFingerprint(destination, fingerprint)) {
+			System.err.println("Cannot save the fingerprint of the create script");
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param create
+	 * @return the hash of the create script, or null if the script inserts
+	 * data, which emptying the tables would lose
+	 */
+	private String fingerprint(File create) {
+		Check.notNull(create);
+
+		try (SqlLexer lexer = SqlLexer.open(create, getDialect().getSyntax())) {
+			while (lexer.next()) {
+				if (lexer.getKind() == SqlLexer.Kind.DATA
+						|| lexer.getKind() == SqlLexer.Kind.STATEMENT && DATA_STATEMENTS.stream().anyMatch(lexer::startsWith)) {
+					return null;
+				}
+			}
+
+			return Digest.sha256().update(create).toHex();
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	/**
+	 * @param destination
+	 * @return the open session of the environment, or null on error
+	 */
+	protected final Session getSession(Environment destination) {
+		Check.notNull(destination);
+
+		Session session = sessions.get(destination.getName());
+		if (session == null || !session.isAlive()) {
+			session = getDialect().openSession(destination);
+			if (session == null) {
+				System.err.println("Cannot open a session to " + destination.getName());
+				return null;
+			}
+
+			sessions.put(destination.getName(), session);
+		}
+
+		return session;
+	}
+
+	/**
+	 * Closes the open session of the environment, e.g. before the database
+	 * is replaced under it.
+	 *
+	 * @param destination
+	 */
+	protected final void disconnect(Environment destination) {
+		Check.notNull(destination);
+
+		Session session = sessions.remove(destination.getName());
+		if (session != null) {
+			session.close();
+		}
+	}
+
+	/**
+	 * Builds the indexes and constraints of a load stage by stage, the
+	 * scripts of a stage on parallel sessions.
+	 *
+	 * @param destination
+	 * @param build
+	 * @param jobs
+	 * @return success
+	 */
+	protected final boolean build(Environment destination, DeferredBuild build, int jobs) {
+		Check.notNull(destination);
+		Check.notNull(build);
+		Check.positive(jobs);
+
+		if (build.isEmpty()) {
+			return true;
+		}
+
+		long start = System.currentTimeMillis();
+
+		SessionPool pool = SessionPool.open(getDialect(), destination, Math.min(jobs, build.getStages().stream().mapToInt(List::size).max().getAsInt()));
+		if (pool == null) {
+			return false;
+		}
+
+		try {
+			for (List<String> stage : build.getStages()) {
+				List<Callable<Boolean>> tasks = stage.stream()
+						.map(script -> (Callable<Boolean>) () -> pool.apply(session -> session.execute(Feed.of(script))))
+						.collect(Collectors.toList());
+
+				if (!Parallel.run(jobs, tasks)) {
+					System.err.println("Cannot build the indexes and the constraints");
+					return false;
+				}
+			}
+
+		} finally {
+			pool.close();
+		}
+
+		System.err.format("Indexes and constraints built in %.1f s, %d scripts%n", (System.currentTimeMillis() - start) / 1000.0, build.countScripts());
+		return true;
+	}
+
+	/**
+	 * Updates the statistics of the tables and reads the configured tables
+	 * into the cache of the server, on parallel sessions. Failures are only
+	 * reported, the loaded data is not affected by them.
+	 *
+	 * @param destination
+	 */
+	protected final void optimize(Environment destination) {
+		Check.notNull(destination);
+
+		if (!configuration.isAnalyze() && configuration.getPrewarm().isEmpty()) {
+			return;
+		}
+
+		List<String> tables = getDialect().listTables(destination);
+		if (tables == null) {
+			System.err.println("Cannot list the tables to optimize");
+			return;
+		}
+
+		List<String> prewarm = configuration.getPrewarm().stream()
+				.filter(table -> {
+					if (tables.contains(table)) {
+						return true;
+					}
+
+					System.err.println("Cannot prewarm " + table + ": table not found");
+					return false;
+				})
+				.collect(Collectors.toList());
+
+		SessionPool pool = SessionPool.open(getDialect(), destination, getParameters().getJobs(POST_LOAD_JOBS));
+		if (pool == null) {
+			return;
+		}
+
+		try {
+			if (configuration.isAnalyze()) {
+				optimize(pool, "analyze", tables, getDialect()::analyze);
+			}
+
+			optimize(pool, "prewarm", prewarm, getDialect()::prewarm);
+
+		} finally {
+			pool.close();
+		}
+	}
+
+	private void optimize(SessionPool pool, String name, List<String> tables, BiPredicate<Session, String> work) {
+		Check.notNull(pool);
+		Check.notEmpty(name);
+		Check.noneNull(tables);
+		Check.notNull(work);
+
+		if (tables.isEmpty()) {
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+
+		List<Callable<Boolean>> tasks = tables.stream()
+				.map(table -> (Callable<Boolean>) () -> {
+					if (pool.apply(session -> work.test(session, table))) {
+						return true;
+					}
+
+					System.err.println("Cannot " + name + " " + table);
+					return false;
+				})
+				.collect(Collectors.toList());
+
+		boolean success = Parallel.run(getParameters().getJobs(POST_LOAD_JOBS), tasks);
+
+		System.err.format("%s: %d tables in %.1f s%s%n", name, tables.size(), (System.currentTimeMillis() - start) / 1000.0, success ? "" : ", with errors");
+	}
+
+	@Override
+	public void close() {
+		sessions.values().forEach(Session::close);
+		sessions.clear();
+	}
+
+	/**
+	 * Splits the tables into chunks of similar size for the given number of
+	 * jobs. The largest chunks come first, the chunks of a table are in the
+	 * order of their ranges.
+	 *
+	 * @param source
+	 * @param tables
+	 * @param jobs
+	 * @return the chunks
+	 */
+	protected final List<TableChunk> plan(Environment source, List<TableInfo> tables, int jobs) {
+		Check.notNull(source);
+		Check.noneNull(tables);
+		Check.positive(jobs);
+
+		long total = tables.stream().mapToLong(TableInfo::getBytes).sum();
+		long chunkBytes = Math.max(MIN_CHUNK_BYTES, total / ((long) jobs * CHUNKS_PER_JOB));
+
+		List<TableChunk> chunks = new ArrayList<>();
+		for (TableInfo table : tables) {
+			int count = (int) Math.min(MAX_CHUNKS, (table.getBytes() + chunkBytes - 1) / chunkBytes);
+
+			List<Range> ranges = null;
+			if (jobs > 1 && count > 1) {
+				ranges = getDialect().split(source, table.getName(), count);
+			}
+
+			if (ranges == null || ranges.size() <= 1) {
+				chunks.add(new TableChunk(table.getName(), null, table.getBytes()));
+				continue;
+			}
+
+			for (Range range : ranges) {
+				chunks.add(new TableChunk(table.getName(), range, table.getBytes() / ranges.size()));
+			}
+		}
+
+		// stable, the ranges of a table stay in order
+		chunks.sort(Comparator.comparingLong(TableChunk::getBytes).reversed());
+		return chunks;
+	}
 }
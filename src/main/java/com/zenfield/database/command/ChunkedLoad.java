@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.command;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Exceptions;
+import com.zenfield.core.Feed;
+import com.zenfield.core.Files;
+import com.zenfield.core.SqlLexer;
+import com.zenfield.database.dialect.Session;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Loads a script in several transactions instead of one. The script is cut
+ * between statements, never inside the data of a COPY statement. After each
+ * committed chunk the offset of the next statement is saved into a progress
+ * file next to the script, so that an interrupted load continues from there.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+class ChunkedLoad {
+
+	private static final long MEGABYTE = 1024L * 1024;
+	private static final String DEFAULT_DELIMITER = ";";
+	private static final String END_OF_DATA = "\\.\n";
+	private static final Pattern SESSION_SETTING = Pattern.compile("(?is)^(/\\*!\\d*\\s*)?SET\\b.*|^SELECT\\s+pg_catalog\\.set_config\\b.*");
+	// the variables set by a setting, the latest setting of the same
+	// variables replaces the earlier one
+	private static final Pattern SET_BODY = Pattern.compile("(?is)^(?:/\\*!\\d*\\s*)?SET\\s+(.*?)\\s*(?:\\*/)?\\s*$");
+	private static final Pattern SET_NAME = Pattern.compile("(?i)(?:^|,)\\s*((?:@@)?(?:(?:SESSION|LOCAL)(?:\\s+|\\.))?[@\\w.]+)\\s*(?::=|=|\\bTO\\b)");
+	private static final Pattern SET_CONFIG = Pattern.compile("(?is)^SELECT\\s+pg_catalog\\.set_config\\s*\\(\\s*'([^']*)'.*");
+
+	private final File script;
+	private final File progress;
+	private final String environment;
+	private final SqlLexer.Syntax syntax;
+	private final int statements;
+	private final long bytes;
+
+	private SqlLexer lexer;
+	private boolean more;
+	private final Map<String, String> settings = new LinkedHashMap<>();
+
+	/**
+	 * @param script
+	 * @param environment the name of the destination
+	 * @param syntax
+	 * @param statements the statements of a chunk, 0 if not limited
+	 * @param megabytes the size of a chunk, 0 if not limited
+	 */
+	ChunkedLoad(File script, String environment, SqlLexer.Syntax syntax, int statements, int megabytes) {
+		Check.notNull(script);
+		Check.notEmpty(environment);
+		Check.notNull(syntax);
+		Check.that(statements > 0 || megabytes > 0);
+
+		this.script = script;
+		this.progress = new File(script.getPath() + ".progress");
+		this.environment = environment;
+		this.syntax = syntax;
+		this.statements = statements;
+		this.bytes = megabytes * MEGABYTE;
+	}
+
+	/**
+	 * @return the offset where an earlier load of the same script into the
+	 * same environment stopped, 0 if there is nothing to resume
+	 */
+	long getResumeOffset() {
+		if (!progress.isFile()) {
+			return 0;
+		}
+
+		try {
+			String[] fields = Files.load(progress).trim().split("\t");
+			if (fields.length != 4
+					|| !fields[0].equals(environment)
+					|| Long.parseLong(fields[1]) != script.length()
+					|| Long.parseLong(fields[2]) != script.lastModified()) {
+				return 0;
+			}
+
+			return Long.parseLong(fields[3]);
+
+		} catch (IOException | NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Executes the chunks of the script, each in its own transaction on the
+	 * session.
+	 *
+	 * @param session
+	 * @param profile wraps each chunk, e.g. into a bulk load profile
+	 * @return success
+	 */
+	boolean run(Session session, UnaryOperator<Feed> profile) {
+		Check.notNull(session);
+		Check.notNull(profile);
+
+		long offset = getResumeOffset();
+
+		try (SqlLexer opened = SqlLexer.open(script, syntax)) {
+			lexer = opened;
+			more = lexer.next();
+
+			// the settings of the session are reset after each chunk and lost
+			// with the interrupted load, they are repeated before every chunk
+			while (more && lexer.getStart() < offset) {
+				keepSessionSetting();
+				more = lexer.next();
+			}
+
+			long size = script.length();
+			while (more) {
+				if (!session.execute(profile.apply(this::writeChunk))) {
+					System.err.format("Load stopped, %d MB of %d MB were committed%n", offset / MEGABYTE, size / MEGABYTE);
+					return false;
+				}
+
+				offset = more ? lexer.getStart() : size;
+				if (more) {
+					Files.write(String.format("%s\t%d\t%d\t%d%n", environment, script.length(), script.lastModified(), offset), progress);
+				}
+
+				System.err.format("- committed %d MB of %d MB%n", offset / MEGABYTE, size / MEGABYTE);
+			}
+
+			Files.delete(progress);
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+
+		} finally {
+			lexer = null;
+		}
+	}
+
+	/**
+	 * Writes the tokens from the current one until the chunk is full.
+	 */
+	private void writeChunk(OutputStream out) throws IOException {
+		WritableByteChannel channel = Channels.newChannel(out);
+
+		write(out, String.join("", settings.values()));
+
+		if (syntax == SqlLexer.Syntax.MYSQL && !DEFAULT_DELIMITER.equals(lexer.getDelimiter())) {
+			write(out, "DELIMITER " + lexer.getDelimiter() + "\n");
+		}
+
+		int count = 0;
+		long written = 0;
+		boolean copying = false;
+
+		while (more) {
+			if (lexer.getKind() != SqlLexer.Kind.DATA) {
+				if (copying) {
+					write(out, END_OF_DATA);
+					copying = false;
+				}
+
+				if ((statements > 0 && count >= statements) || (bytes > 0 && written >= bytes)) {
+					return;
+				}
+			}
+
+			ByteBuffer token = lexer.getBytes();
+			written += token.remaining();
+			while (token.hasRemaining()) {
+				channel.write(token);
+			}
+
+			switch (lexer.getKind()) {
+				case STATEMENT:
+					write(out, lexer.getDelimiter() + "\n");
+					keepSessionSetting();
+					copying = lexer.hasData();
+					count++;
+					break;
+
+				case COMMAND:
+					write(out, "\n");
+					break;
+
+				default:
+					break;
+			}
+
+			more = lexer.next();
+		}
+
+		if (copying) {
+			write(out, END_OF_DATA);
+		}
+	}
+
+	private void keepSessionSetting() {
+		if (lexer.getKind() != SqlLexer.Kind.STATEMENT) {
+			return;
+		}
+
+		// MySQL dumps wrap their settings into executable comments
+		if (!lexer.startsWith("SET") && !lexer.startsWith("SELECT") && lexer.getBytes().get(0) != '/') {
+			return;
+		}
+
+		String text = lexer.getText();
+		if (SESSION_SETTING.matcher(text).matches()) {
+			// moved to the end, the settings are repeated in their latest order
+			String key = getSettingKey(text);
+			settings.remove(key);
+			settings.put(key, text + DEFAULT_DELIMITER + '\n');
+		}
+	}
+
+	/**
+	 * @param setting
+	 * @return the names of the variables set by the setting, or its first
+	 * word if it sets no named variable, e.g. SET NAMES
+	 */
+	private static String getSettingKey(String setting) {
+		Check.notNull(setting);
+
+		Matcher config = SET_CONFIG.matcher(setting);
+		if (config.matches()) {
+			return config.group(1).toLowerCase();
+		}
+
+		Matcher body = SET_BODY.matcher(setting);
+		if (!body.matches()) {
+			return setting;
+		}
+
+		List<String> names = new ArrayList<>();
+		Matcher name = SET_NAME.matcher(body.group(1));
+		while (name.find()) {
+			names.add(name.group(1).toLowerCase().replaceFirst("^@@", "").replaceFirst("^(session|local)[\\s.]+", ""));
+		}
+
+		return names.isEmpty() ? body.group(1).split("\\s+")[0].toLowerCase() : String.join(",", names);
+	}
+
+	private static void write(OutputStream out, String text) throws IOException {
+		out.write(text.getBytes(StandardCharsets.UTF_8));
+	}
+}
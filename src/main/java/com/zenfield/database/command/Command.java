@@ -33,4 +33,9 @@ public interface Command {
 
 	Environment getDestination();
 
+	/**
+	 * Releases the connections that were kept open by the command.
+	 */
+	void close();
+
 }
@@ -58,27 +58,11 @@ public class CreateCommand extends AbstractCommand {
 			return false;
 		}
 
-		if (!getDialect().clear(destination)) {
-			System.err.println("Cannot clear the database before create");
-			return false;
-		}
-
 		if (getConfiguration().getCreate() == null) {
 			System.err.println("Cannot create the database: create script not configured");
 			return false;
 		}
 
-		if (getConfiguration().getCreate() == null) {
-			System.err.println("Cannot create the database: create script not found at " + getConfiguration().getCreate());
-			return false;
-		}
-
-		if (!getDialect().execute(destination, getConfiguration().getCreate())) {
-			System.err.println("Cannot create the database");
-			return false;
-		}
-
-		System.err.println("Database created");
-		return true;
+		return recreate(destination);
 	}
 }
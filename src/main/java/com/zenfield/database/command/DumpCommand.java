@@ -22,13 +22,29 @@
 package com.zenfield.database.command;
 
 import com.zenfield.core.Check;
+import com.zenfield.core.Closeables;
 import com.zenfield.core.Exceptions;
+import com.zenfield.core.Files;
+import com.zenfield.core.IOStreams;
+import com.zenfield.core.Parallel;
 import com.zenfield.database.configuration.Environment;
 import com.zenfield.database.configuration.Parameters;
 import com.zenfield.database.configuration.ProjectConfiguration;
+import com.zenfield.database.dialect.Section;
+import com.zenfield.database.dialect.Snapshot;
+import com.zenfield.database.dialect.TableInfo;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  *
@@ -60,10 +76,19 @@ public class DumpCommand extends AbstractCommand {
 		filename += source.getName();
 		filename += "-";
 		filename += FORMATTER.format(LocalDateTime.now());
+
+		if (getDialect().isArchiveSupported(source)) {
+			return archive(new File(filename), getParameters().getJobs(Runtime.getRuntime().availableProcessors()));
+		}
+
 		filename += ".sql";
 
 		File destination = new File(filename);
 
+		if (getParameters().getJobs() > 1) {
+			return parallel(destination, getParameters().getJobs());
+		}
+
 		try {
 			if (!getDialect().dump(source, destination)) {
 				System.err.println("Database dump failed");
@@ -80,4 +105,96 @@ public class DumpCommand extends AbstractCommand {
 			return false;
 		}
 	}
+
+	private boolean archive(File destination, int jobs) {
+		Check.notNull(destination);
+		Check.positive(jobs);
+
+		try {
+			if (!getDialect().dumpArchive(source, destination, jobs)) {
+				System.err.println("Database dump failed");
+				return false;
+			}
+
+			System.err.println("Database dump written to " + destination.getPath());
+			return true;
+
+		} catch (Exception e) {
+			System.err.println("Error while dumping a database");
+			System.err.println();
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	private boolean parallel(File destination, int jobs) {
+		Check.notNull(destination);
+		Check.positive(jobs);
+
+		List<TableInfo> tables = getDialect().describeTables(source);
+		if (tables == null) {
+			System.err.println("Cannot list the tables");
+			return false;
+		}
+
+		Snapshot snapshot = getDialect().openSnapshot(source, jobs);
+		if (snapshot == null) {
+			System.err.println("Cannot open a snapshot");
+			return false;
+		}
+
+		List<File> parts = new ArrayList<>();
+
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(destination))) {
+			if (!getDialect().dump(source, Section.PRE_DATA, snapshot, output)) {
+				System.err.println("Database dump failed");
+				return false;
+			}
+
+			// the chunks are dumped into parts in parallel and joined in order
+			List<Callable<Boolean>> tasks = new ArrayList<>();
+			for (TableChunk chunk : plan(source, tables, jobs)) {
+				File part = File.createTempFile("db-", ".sql");
+				parts.add(part);
+
+				tasks.add(() -> {
+					try (OutputStream out = new BufferedOutputStream(new FileOutputStream(part))) {
+						boolean dumped = getDialect().dump(source, chunk.getTable(), chunk.getRange(), snapshot, out);
+						System.err.format("- %-32s %s%n", chunk, dumped ? "ok" : "error");
+						return dumped;
+					}
+				});
+			}
+
+			if (!Parallel.run(jobs, tasks)) {
+				System.err.println("Database dump failed");
+				return false;
+			}
+
+			for (File part : parts) {
+				try (InputStream in = new FileInputStream(part)) {
+					IOStreams.copy(in, output);
+				}
+				Files.delete(part);
+			}
+
+			if (!getDialect().dump(source, Section.POST_DATA, snapshot, output)) {
+				System.err.println("Database dump failed");
+				return false;
+			}
+
+			System.err.println("Database dump written to " + destination.getPath());
+			return true;
+
+		} catch (IOException e) {
+			System.err.println("Error while dumping a database");
+			System.err.println();
+			Exceptions.print(e, System.err);
+			return false;
+
+		} finally {
+			parts.forEach(Files::delete);
+			Closeables.close(snapshot);
+		}
+	}
 }
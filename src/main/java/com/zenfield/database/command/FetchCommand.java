@@ -22,14 +22,24 @@
 package com.zenfield.database.command;
 
 import com.zenfield.core.Check;
+import com.zenfield.core.Closeables;
 import com.zenfield.core.Exceptions;
+import com.zenfield.core.Feed;
 import com.zenfield.core.Files;
+import com.zenfield.core.Parallel;
 import com.zenfield.database.configuration.Environment;
 import com.zenfield.database.configuration.Parameters;
 import com.zenfield.database.configuration.ProjectConfiguration;
 import com.zenfield.database.configuration.ReadOnly;
+import com.zenfield.database.dialect.DeferredBuild;
+import com.zenfield.database.dialect.Section;
+import com.zenfield.database.dialect.Snapshot;
+import com.zenfield.database.dialect.TableInfo;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -68,6 +78,18 @@ public class FetchCommand extends AbstractCommand {
 			return false;
 		}
 
+		if (!getParameters().isStream() && getDialect().isArchiveSupported(source) && getDialect().isArchiveSupported(destination)) {
+			return archive(destination, getParameters().getJobs(Runtime.getRuntime().availableProcessors()));
+		}
+
+		if (getParameters().getJobs() > 1) {
+			return parallel(destination, getParameters().getJobs());
+		}
+
+		if (getParameters().isStream()) {
+			return stream(destination);
+		}
+
 		File tmp = null;
 
 		try {
@@ -84,12 +106,13 @@ public class FetchCommand extends AbstractCommand {
 
 			executeHook("post-clear", getConfiguration().getPostClear(), destination);
 
-			if (!getDialect().execute(destination, tmp)) {
+			if (!getDialect().execute(destination, getDialect().bulkLoad(destination, Feed.of(tmp)))) {
 				System.err.println("Database load failed");
 				return false;
 			}
 
 			executeHook("post-fetch", getConfiguration().getPostFetch(), destination);
+			optimize(destination);
 
 			System.err.println("Database fetch done");
 			return true;
@@ -104,4 +127,188 @@ public class FetchCommand extends AbstractCommand {
 			Files.delete(tmp);
 		}
 	}
+
+	private boolean stream(Environment destination) {
+		Check.notNull(destination);
+
+		if (!getDialect().clear(destination)) {
+			System.err.println("Cannot clear the database before fetch");
+			return false;
+		}
+
+		executeHook("post-clear", getConfiguration().getPostClear(), destination);
+
+		boolean loaded = getDialect().execute(destination, getDialect().bulkLoad(destination, out -> {
+			if (!getDialect().dump(source, out)) {
+				throw new IOException("Database dump failed");
+			}
+		}));
+
+		if (!loaded) {
+			System.err.println("Database fetch failed");
+			return false;
+		}
+
+		executeHook("post-fetch", getConfiguration().getPostFetch(), destination);
+		optimize(destination);
+
+		System.err.println("Database fetch done");
+		return true;
+	}
+
+	private boolean archive(Environment destination, int jobs) {
+		Check.notNull(destination);
+		Check.positive(jobs);
+
+		File tmp = null;
+
+		try {
+			tmp = java.nio.file.Files.createTempDirectory("db-").toFile();
+			File archive = new File(tmp, "archive");
+
+			if (!getDialect().dumpArchive(source, archive, jobs)) {
+				System.err.println("Database dump failed");
+				return false;
+			}
+
+			if (!getDialect().clear(destination)) {
+				System.err.println("Cannot clear the database before fetch");
+				return false;
+			}
+
+			executeHook("post-clear", getConfiguration().getPostClear(), destination);
+
+			if (!getDialect().restoreArchive(destination, archive, jobs)) {
+				System.err.println("Database load failed");
+				return false;
+			}
+
+			executeHook("post-fetch", getConfiguration().getPostFetch(), destination);
+			optimize(destination);
+
+			System.err.println("Database fetch done");
+			return true;
+
+		} catch (IOException e) {
+			System.err.println("Error while fetching a database");
+			System.err.println();
+			Exceptions.print(e, System.err);
+			return false;
+
+		} finally {
+			Files.deleteTree(tmp);
+		}
+	}
+
+	private boolean parallel(Environment destination, int jobs) {
+		Check.notNull(destination);
+		Check.positive(jobs);
+
+		List<TableInfo> tables = getDialect().describeTables(source);
+		if (tables == null) {
+			System.err.println("Cannot list the tables of the source");
+			return false;
+		}
+
+		Snapshot snapshot = getDialect().openSnapshot(source, jobs);
+		if (snapshot == null) {
+			System.err.println("Cannot open a snapshot of the source");
+			return false;
+		}
+
+		try {
+			if (!getDialect().clear(destination)) {
+				System.err.println("Cannot clear the database before fetch");
+				return false;
+			}
+
+			executeHook("post-clear", getConfiguration().getPostClear(), destination);
+
+			if (!load(destination, Section.PRE_DATA, snapshot)) {
+				return false;
+			}
+
+			DeferredBuild deferred = null;
+			if (getParameters().isDeferIndexes()) {
+				// the rows come from a consistent source, they are unique
+				deferred = getDialect().deferIndexes(destination, true);
+				if (deferred == null) {
+					System.err.println("Cannot defer the indexes before fetch");
+					return false;
+				}
+			}
+
+			if (!getDialect().beginBulkLoad(destination)) {
+				System.err.println("Cannot prepare the tables for the bulk load");
+				return false;
+			}
+
+			List<Callable<Boolean>> tasks = plan(source, tables, jobs).stream()
+					.map(chunk -> (Callable<Boolean>) () -> load(destination, chunk, snapshot))
+					.collect(Collectors.toList());
+
+			boolean fetched = Parallel.run(jobs, tasks);
+
+			// the tables are logged again before the indexes are built
+			if (!getDialect().endBulkLoad(destination)) {
+				System.err.println("Cannot restore the tables after the bulk load");
+				return false;
+			}
+
+			if (!fetched) {
+				System.err.println("Database fetch failed");
+				return false;
+			}
+
+			if (deferred != null && !build(destination, deferred, jobs)) {
+				return false;
+			}
+
+			if (!load(destination, Section.POST_DATA, snapshot)) {
+				return false;
+			}
+
+		} finally {
+			Closeables.close(snapshot);
+		}
+
+		executeHook("post-fetch", getConfiguration().getPostFetch(), destination);
+		optimize(destination);
+
+		System.err.println("Database fetch done");
+		return true;
+	}
+
+	private boolean load(Environment destination, Section section, Snapshot snapshot) {
+		Check.notNull(destination);
+		Check.notNull(section);
+		Check.notNull(snapshot);
+
+		boolean loaded = getDialect().execute(destination, out -> {
+			if (!getDialect().dump(source, section, snapshot, out)) {
+				throw new IOException("Schema dump failed");
+			}
+		});
+
+		if (!loaded) {
+			System.err.println("Cannot load the schema: " + section);
+		}
+
+		return loaded;
+	}
+
+	private boolean load(Environment destination, TableChunk chunk, Snapshot snapshot) {
+		Check.notNull(destination);
+		Check.notNull(chunk);
+		Check.notNull(snapshot);
+
+		boolean loaded = getDialect().execute(destination, getDialect().bulkLoad(destination, out -> {
+			if (!getDialect().dump(source, chunk.getTable(), chunk.getRange(), snapshot, out)) {
+				throw new IOException("Table dump failed: " + chunk);
+			}
+		}));
+
+		System.err.format("- %-32s %s%n", chunk, loaded ? "ok" : "error");
+		return loaded;
+	}
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.command;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Digest;
+import com.zenfield.core.Exceptions;
+import com.zenfield.core.Feed;
+import com.zenfield.core.Files;
+import com.zenfield.core.IOStreams;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compressed output of the populate generators in a directory of the home
+ * directory, addressed by the hash of the generator, of the files of its
+ * directory and of the inputs listed in its .inputs file. The entries used
+ * least recently are deleted above a total size.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+class GeneratorCache {
+
+	private static final String DIRECTORY = ".db-cache";
+	private static final String SUFFIX = ".sql.gz";
+	private static final String TEMP_PREFIX = "db-";
+	private static final String INPUTS_SUFFIX = ".inputs";
+	private static final int BUFFER_SIZE = 65536;
+
+	private final File directory = new File(Files.getHome(), DIRECTORY);
+	private final long limit;
+	private final Map<File, String> trees = new ConcurrentHashMap<>();
+
+	/**
+	 * @param limit the total size of the entries in bytes
+	 */
+	GeneratorCache(long limit) {
+		Check.positive(limit);
+		this.limit = limit;
+	}
+
+	/**
+	 * @param file
+	 * @return true if the file lists the inputs of a generator, one path
+	 * relative to the generator per line
+	 */
+	static boolean isInputs(File file) {
+		Check.notNull(file);
+		return file.getName().endsWith(INPUTS_SUFFIX);
+	}
+
+	/**
+	 * @param script
+	 * @param generator the output of the script
+	 * @return the cached output, or the output of the generator which is
+	 * cached once it is read completely
+	 */
+	Feed feed(File script, Feed generator) {
+		Check.notNull(script);
+		Check.notNull(generator);
+
+		String key;
+		try {
+			key = hash(script, trees);
+
+		} catch (IOException e) {
+			System.err.println("Cannot hash the inputs of the script, not cached: " + script.getName());
+			Exceptions.print(e, System.err);
+			return generator;
+		}
+
+		File entry = new File(directory, key + SUFFIX);
+		if (entry.isFile()) {
+			entry.setLastModified(System.currentTimeMillis());
+			System.err.println("Cached output: " + script.getName());
+			return read(entry);
+		}
+
+		return write(entry, generator);
+	}
+
+	/**
+	 * @param script
+	 * @param trees the hashes of the directories hashed so far, the hash of
+	 * the directory of the script is added
+	 * @return the hash of the script, of the files of its directory and of
+	 * its inputs
+	 * @throws IOException if an input is missing or cannot be read
+	 */
+	static String hash(File script, Map<File, String> trees) throws IOException {
+		Check.notNull(script);
+		Check.notNull(trees);
+
+		File parent = script.getAbsoluteFile().getParentFile();
+		String tree = trees.get(parent);
+		if (tree == null) {
+			tree = hashTree(parent);
+			trees.put(parent, tree);
+		}
+
+		Digest digest = Digest.sha256().update(script.getName()).update(script).update(tree);
+
+		File inputs = new File(script.getPath() + INPUTS_SUFFIX);
+		if (inputs.isFile()) {
+			for (String line : Files.loadLines(inputs)) {
+				String path = line.trim();
+				if (path.isEmpty() || path.startsWith("#")) {
+					continue;
+				}
+
+				File input = new File(path).isAbsolute() ? new File(path) : new File(parent, path);
+				if (!input.exists()) {
+					throw new IOException("Input of " + script.getName() + " not found: " + path);
+				}
+
+				digest.update(path).update(hashTree(input));
+			}
+		}
+
+		return digest.toHex();
+	}
+
+	private static String hashTree(File file) throws IOException {
+		Check.notNull(file);
+
+		if (!file.isDirectory()) {
+			return Digest.sha256().update(file).toHex();
+		}
+
+		File[] children = file.listFiles();
+		if (children == null) {
+			throw new IOException("Cannot list the directory: " + file);
+		}
+
+		Arrays.sort(children);
+
+		Digest digest = Digest.sha256();
+		for (File child : children) {
+			digest.update(child.getName()).update(hashTree(child));
+		}
+
+		return digest.toHex();
+	}
+
+	private static Feed read(File entry) {
+		Check.notNull(entry);
+
+		return out -> {
+			try (InputStream in = new GZIPInputStream(new FileInputStream(entry), BUFFER_SIZE)) {
+				IOStreams.copy(in, out);
+			}
+		};
+	}
+
+	private Feed write(File entry, Feed generator) {
+		Check.notNull(entry);
+		Check.notNull(generator);
+
+		return out -> {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Cannot create the cache directory: " + directory);
+			}
+
+			File tmp = File.createTempFile(TEMP_PREFIX, SUFFIX, directory);
+			boolean complete = false;
+
+			try {
+				try (OutputStream cache = new GZIPOutputStream(new FileOutputStream(tmp), BUFFER_SIZE)) {
+					generator.write(new Tee(out, cache));
+				}
+
+				complete = true;
+
+			} finally {
+				// an entry written meanwhile by a parallel populate is kept
+				if (complete && tmp.renameTo(entry)) {
+					evict(entry);
+
+				} else {
+					Files.delete(tmp);
+				}
+			}
+		};
+	}
+
+	private synchronized void evict(File keep) {
+		Check.notNull(keep);
+
+		File[] entries = directory.listFiles((dir, name) -> name.endsWith(SUFFIX) && !name.startsWith(TEMP_PREFIX));
+		if (entries == null) {
+			return;
+		}
+
+		List<File> order = Arrays.asList(entries);
+		order.sort(Comparator.comparingLong(File::lastModified));
+
+		long total = order.stream().mapToLong(File::length).sum();
+		for (File entry : order) {
+			if (total <= limit) {
+				break;
+			}
+
+			if (!entry.equals(keep)) {
+				total -= entry.length();
+				Files.delete(entry);
+			}
+		}
+	}
+
+	/**
+	 * Writes into the destination and into a copy.
+	 */
+	private static final class Tee extends OutputStream {
+
+		private final OutputStream destination;
+		private final OutputStream copy;
+
+		private Tee(OutputStream destination, OutputStream copy) {
+			this.destination = destination;
+			this.copy = copy;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			destination.write(b);
+			copy.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			destination.write(b, off, len);
+			copy.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			destination.flush();
+			copy.flush();
+		}
+	}
+}
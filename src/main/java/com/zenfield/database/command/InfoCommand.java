@@ -22,10 +22,20 @@
 package com.zenfield.database.command;
 
 import com.zenfield.core.Check;
+import com.zenfield.core.Parallel;
+import com.zenfield.core.Strings;
 import com.zenfield.database.configuration.Environment;
 import com.zenfield.database.configuration.Parameters;
 import com.zenfield.database.configuration.ProjectConfiguration;
+import com.zenfield.database.dialect.Session;
+import com.zenfield.database.dialect.SessionPool;
+import com.zenfield.database.dialect.TableInfo;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -33,6 +43,9 @@ import java.util.List;
  */
 public class InfoCommand extends AbstractCommand {
 
+	private static final int EXACT_JOBS = 4;
+	private static final String[] UNITS = {"B", "kB", "MB", "GB", "TB"};
+
 	private final Environment destination;
 
 	public InfoCommand(ProjectConfiguration configuration, Parameters parameters, Environment destination) {
@@ -49,7 +62,7 @@ public class InfoCommand extends AbstractCommand {
 
 	@Override
 	public boolean run(Environment unused) {
-		List<String> tables = getDialect().listTables(destination);
+		List<TableInfo> tables = getDialect().describeTables(destination);
 		if (tables == null) {
 			return false;
 		}
@@ -59,12 +72,77 @@ public class InfoCommand extends AbstractCommand {
 			return true;
 		}
 
-		System.out.println("Tables:");
-		tables.stream().sorted().forEachOrdered((table) -> {
-			int rows = getDialect().countRows(destination, table);
-			System.out.println("- " + table + ": " + (rows < 0 ? "ERROR" : rows));
-		});
+		tables = tables.stream()
+				.sorted(Comparator.comparing(TableInfo::getName))
+				.collect(Collectors.toList());
+
+		if (getParameters().isExact()) {
+			return exact(tables, getParameters().getJobs(EXACT_JOBS));
+		}
+
+		System.out.println("Tables (estimated):");
+		for (TableInfo table : tables) {
+			String rows = table.getRows() < 0 ? "unknown" : "~" + table.getRows();
+			System.out.println("- " + table.getName() + ": " + rows + " rows, " + formatBytes(table.getBytes()));
+		}
 
 		return true;
 	}
+
+	private boolean exact(List<TableInfo> tables, int jobs) {
+		Check.noneNull(tables);
+		Check.positive(jobs);
+
+		SessionPool pool = SessionPool.open(getDialect(), destination, Math.min(jobs, tables.size()));
+		if (pool == null) {
+			return false;
+		}
+
+		Map<String, Long> counts = new ConcurrentHashMap<>();
+		List<Callable<Boolean>> tasks = tables.stream()
+				.map(table -> (Callable<Boolean>) () -> {
+					long rows = pool.apply(session -> count(session, table.getName()));
+					counts.put(table.getName(), rows);
+					return rows >= 0;
+				})
+				.collect(Collectors.toList());
+
+		boolean counted;
+		try {
+			counted = Parallel.run(jobs, tasks);
+		} finally {
+			pool.close();
+		}
+
+		System.out.println("Tables:");
+		for (TableInfo table : tables) {
+			long rows = counts.getOrDefault(table.getName(), -1L);
+			System.out.println("- " + table.getName() + ": " + (rows < 0 ? "ERROR" : rows + " rows") + ", " + formatBytes(table.getBytes()));
+		}
+
+		return counted;
+	}
+
+	private static long count(Session session, String table) {
+		Check.notNull(session);
+		Check.notEmpty(table);
+
+		List<String> result = session.query("SELECT COUNT(*) FROM " + table);
+		if (result == null || result.isEmpty()) {
+			return -1;
+		}
+
+		return Strings.toLong(result.get(0), -1);
+	}
+
+	private static String formatBytes(long bytes) {
+		double value = bytes;
+		int unit = 0;
+		while (value >= 1024 && unit < UNITS.length - 1) {
+			value /= 1024;
+			unit++;
+		}
+
+		return unit == 0 ? bytes + " " + UNITS[0] : String.format("%.1f %s", value, UNITS[unit]);
+	}
 }
@@ -23,10 +23,12 @@ package com.zenfield.database.command;
 
 import com.zenfield.core.Check;
 import com.zenfield.core.Exceptions;
+import com.zenfield.core.Feed;
 import com.zenfield.database.configuration.Environment;
 import com.zenfield.database.configuration.Parameters;
 import com.zenfield.database.configuration.ProjectConfiguration;
 import com.zenfield.database.configuration.ReadOnly;
+import com.zenfield.database.dialect.Session;
 import java.io.File;
 
 /**
@@ -64,7 +66,8 @@ public class LoadCommand extends AbstractCommand {
 			return false;
 		}
 
-		if (file.isDirectory()) {
+		boolean archive = getDialect().isArchive(file);
+		if (file.isDirectory() && !archive) {
 			System.err.println("Cannot load: " + path + " is a directory");
 			return false;
 		}
@@ -78,19 +81,46 @@ public class LoadCommand extends AbstractCommand {
 			return false;
 		}
 
+		ChunkedLoad chunked = null;
+		if (getParameters().isChunkedCommit() && !archive) {
+			chunked = new ChunkedLoad(file, destination.getName(), getDialect().getSyntax(),
+					getParameters().getCommitEvery(), getParameters().getCommitSize());
+		}
+
 		try {
-			if (!getDialect().clear(destination)) {
-				System.err.println("Cannot clear the database before load");
-				return false;
+			long resume = chunked == null ? 0 : chunked.getResumeOffset();
+			if (resume > 0) {
+				// the committed chunks are kept
+				System.err.println("Resuming the load of " + path + " at byte " + resume);
+
+			} else {
+				if (!getDialect().clear(destination)) {
+					System.err.println("Cannot clear the database before load");
+					return false;
+				}
+
+				executeHook("post-clear", getConfiguration().getPostClear(), destination);
 			}
 
-			executeHook("post-clear", getConfiguration().getPostClear(), destination);
+			boolean loaded;
+			if (archive) {
+				loaded = getDialect().restoreArchive(destination, file, getParameters().getJobs(Runtime.getRuntime().availableProcessors()));
+
+			} else if (chunked != null) {
+				Session session = getSession(destination);
+				loaded = session != null && chunked.run(session, feed -> getDialect().bulkLoad(destination, feed));
 
-			if (!getDialect().execute(destination, file)) {
+			} else {
+				loaded = getDialect().execute(destination, getDialect().bulkLoad(destination, Feed.of(file)));
+			}
+
+			if (!loaded) {
 				System.err.println("Database load failed");
 				return false;
 			}
 
+			optimize(destination);
+
 			System.err.println("Database loaded from " + path);
 			return true;
 
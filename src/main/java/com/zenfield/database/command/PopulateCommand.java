@@ -23,15 +23,23 @@ package com.zenfield.database.command;
 
 import com.zenfield.core.Check;
 import com.zenfield.core.Exceptions;
-import com.zenfield.core.Files;
+import com.zenfield.core.Feed;
 import com.zenfield.core.Processes;
+import com.zenfield.database.configuration.BulkLoad;
 import com.zenfield.database.configuration.Environment;
 import com.zenfield.database.configuration.Parameters;
 import com.zenfield.database.configuration.ProjectConfiguration;
 import com.zenfield.database.configuration.ReadOnly;
+import com.zenfield.database.dialect.DeferredBuild;
+import com.zenfield.database.dialect.SessionPool;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -41,6 +49,7 @@ public class PopulateCommand extends AbstractCommand {
 
 	private final String directory;
 	private final Environment destination;
+	private final GeneratorCache cache;
 
 	public PopulateCommand(ProjectConfiguration configuration, Parameters parameters, String directory, Environment destination) {
 		super(configuration, parameters);
@@ -49,6 +58,7 @@ public class PopulateCommand extends AbstractCommand {
 		Check.notNull(destination);
 		this.directory = directory;
 		this.destination = destination;
+		this.cache = configuration.getPopulateCache() > 0 ? new GeneratorCache(configuration.getPopulateCache()) : null;
 	}
 
 	@Override
@@ -79,103 +89,220 @@ public class PopulateCommand extends AbstractCommand {
 			return false;
 		}
 
-		if (!getDialect().clear(destination)) {
-			System.err.println("Cannot clear the database before populate");
-			return false;
+		List<File> steps = new ArrayList<>();
+
+		String[] files = root.list();
+		Arrays.sort(files);
+
+		for (String spot : files) {
+			File file = new File(root, spot);
+
+			if (spot.toLowerCase().endsWith(".skip")) {
+				System.err.println("Skipping: " + spot);
+
+			} else if (spot.toLowerCase().endsWith(".sql") || file.canExecute()) {
+				steps.add(file);
+
+			} else if (!GeneratorCache.isInputs(file)) {
+				System.err.println("Skipping (unknown): " + spot);
+			}
 		}
 
-		System.err.println("Database cleared");
+		PopulateLayers layers = null;
+		List<String> names = null;
 
-		if (!getDialect().execute(destination, getConfiguration().getCreate())) {
-			System.err.println("Cannot create the database before populate");
-			return false;
+		// the layers would keep the tables without indexes or unlogged
+		if (getConfiguration().getPopulateLayers() > 0 && !getParameters().isDeferIndexes() && destination.getBulkLoad() != BulkLoad.UNLOGGED) {
+			try {
+				names = PopulateLayers.names(getConfiguration().getCreate(), steps);
+				layers = new PopulateLayers(getDialect(), destination, getConfiguration().getName(), getConfiguration().getPopulateLayers());
+
+			} catch (IOException e) {
+				System.err.println("Cannot hash the populate steps, populating without layers");
+				Exceptions.print(e, System.err);
+			}
+		}
+
+		int first = layers == null ? -1 : layers.findDeepest(names);
+		if (first >= 0) {
+			disconnect(destination);
+			if (layers.restore(names.get(first))) {
+				System.err.println("Restored populate layer " + names.get(first) + ", " + first + " of " + steps.size() + " files done");
+
+			} else {
+				System.err.println("Cannot restore the populate layer " + names.get(first));
+				first = -1;
+			}
+		}
+
+		if (first < 0) {
+			if (!recreate(destination)) {
+				System.err.println("Cannot create the database before populate");
+				return false;
+			}
+
+			first = 0;
+			if (layers != null) {
+				disconnect(destination);
+				layers.save(names.get(0));
+			}
 		}
 
-		System.err.println("Database created");
+		// the unique indexes are kept, the files may rely on them to skip or
+		// update the duplicates
+		DeferredBuild deferred = null;
+		if (getParameters().isDeferIndexes()) {
+			deferred = getDialect().deferIndexes(destination, false);
+			if (deferred == null) {
+				System.err.println("Cannot defer the indexes before populate");
+				return false;
+			}
+		}
+
+		if (!getDialect().beginBulkLoad(destination)) {
+			System.err.println("Cannot prepare the tables for the bulk load");
+			return false;
+		}
 
 		boolean success = true;
 
-		String[] files = root.list();
-		Arrays.sort(files);
+		if (getParameters().getJobs() > 1) {
+			success = parallel(steps.subList(first, steps.size()), getParameters().getJobs());
 
-		for (String spot : files) {
-			if (spot.toLowerCase().endsWith(".skip")) {
-				System.err.println("Skipping: " + spot);
-				continue;
+			// the steps of a parallel run have no layers of their own
+			if (layers != null && success) {
+				disconnect(destination);
+				layers.save(names.get(steps.size()));
 			}
 
-			if (spot.toLowerCase().endsWith(".sql")) {
-				System.err.println("Executing SQL: " + spot);
-				if (!getDialect().execute(destination, new File(root, spot))) {
-					System.err.println("Cannot execute: " + spot);
+		} else {
+			for (int i = first; i < steps.size(); i++) {
+				if (!executeStep(steps.get(i), script -> executeBulk(destination, script))) {
 					success = false;
 				}
-				continue;
-			}
 
-			if (new File(root, spot).canExecute()) {
-				System.err.println("Executing script: " + spot);
-				if (!executeScript(destination, new File(root, spot))) {
-					success = false;
+				// a layer after a failed file would not match its hash
+				if (layers != null && success) {
+					disconnect(destination);
+					layers.save(names.get(i + 1));
 				}
-				continue;
 			}
+		}
 
-			System.err.println("Skipping (unknown): " + spot);
+		if (!getDialect().endBulkLoad(destination)) {
+			System.err.println("Cannot restore the tables after the bulk load");
+			success = false;
+		}
+
+		// built even after a failed file, the schema must be complete
+		if (deferred != null && !build(destination, deferred, getParameters().getJobs(Runtime.getRuntime().availableProcessors()))) {
+			success = false;
 		}
 
 		return success;
 	}
 
-	private boolean executeScript(Environment destination, File script) {
-		Check.notNull(destination);
-		Check.notNull(script);
+	/**
+	 * Runs the independent files on parallel sessions, in the order of the
+	 * schedule.
+	 *
+	 * @param steps
+	 * @param jobs
+	 * @return success
+	 */
+	private boolean parallel(List<File> steps, int jobs) {
+		Check.noneNull(steps);
+		Check.positive(jobs);
+
+		PopulateSchedule schedule;
+		try {
+			schedule = PopulateSchedule.plan(getConfiguration().getCreate(), steps, getDialect().getSyntax());
 
-		File parent = script.getParentFile();
-		if (parent == null) {
-			System.err.println("Cannot run the script: no parent, script: " + script);
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
 			return false;
 		}
 
-		if (!parent.isDirectory()) {
-			System.err.println("Cannot run the script: parent is not a directory, parent: " + parent);
+		schedule.print();
+
+		SessionPool pool = SessionPool.open(getDialect(), destination, jobs);
+		if (pool == null) {
 			return false;
 		}
 
-		File tmp = null;
-
 		try {
-			ProcessBuilder builder = new ProcessBuilder("./" + script.getName());
-			builder.directory(parent);
+			List<Callable<Boolean>> tasks = steps.stream()
+					.map(step -> (Callable<Boolean>) () -> pool.apply(session -> executeStep(step,
+							script -> session.execute(getDialect().bulkLoad(destination, script)))))
+					.collect(Collectors.toList());
 
-			tmp = File.createTempFile("db-", ".sql");
-			Integer exitCode = Processes.save(builder, tmp);
+			return schedule.run(jobs, tasks);
 
-			if (exitCode == null) {
-				System.err.println("Cannot run the script: null exit code, script: " + script);
-				return false;
-			}
-
-			if (exitCode != 0) {
-				System.err.println("Cannot run the script: exit code was " + exitCode + ", script: " + script);
-				return false;
-			}
+		} finally {
+			pool.close();
+		}
+	}
 
-			if (!getDialect().execute(destination, tmp)) {
-				System.err.println("Cannot load: " + script);
+	/**
+	 * @param step an SQL file or an executable script printing SQL
+	 * @param load loads a script into the destination
+	 * @return success
+	 */
+	private boolean executeStep(File step, Predicate<Feed> load) {
+		Check.notNull(step);
+		Check.notNull(load);
+
+		if (step.getName().toLowerCase().endsWith(".sql")) {
+			System.err.println("Executing SQL: " + step.getName());
+			if (!load.test(Feed.of(step))) {
+				System.err.println("Cannot execute: " + step.getName());
 				return false;
 			}
 
 			return true;
+		}
 
-		} catch (IOException e) {
-			System.err.println("Error while executing script: " + script);
-			System.err.println();
-			Exceptions.print(e, System.err);
+		System.err.println("Executing script: " + step.getName());
+		return executeScript(step, load);
+	}
+
+	/**
+	 * Loads the output of the script while it is running. The script is
+	 * blocked while the client does not keep up, and a failed script aborts
+	 * the load before it is committed.
+	 *
+	 * @param script
+	 * @param load
+	 * @return success
+	 */
+	private boolean executeScript(File script, Predicate<Feed> load) {
+		Check.notNull(script);
+		Check.notNull(load);
+
+		File parent = script.getParentFile();
+		if (parent == null) {
+			System.err.println("Cannot run the script: no parent, script: " + script);
 			return false;
+		}
 
-		} finally {
-			Files.delete(tmp);
+		if (!parent.isDirectory()) {
+			System.err.println("Cannot run the script: parent is not a directory, parent: " + parent);
+			return false;
+		}
+
+		ProcessBuilder builder = new ProcessBuilder("./" + script.getName());
+		builder.directory(parent);
+
+		Feed output = Processes.feed(builder);
+		if (cache != null) {
+			output = cache.feed(script, output);
 		}
+
+		if (!load.test(output)) {
+			System.err.println("Cannot load: " + script);
+			return false;
+		}
+
+		return true;
 	}
 }
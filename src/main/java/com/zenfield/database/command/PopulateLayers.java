@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.command;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Digest;
+import com.zenfield.core.Exceptions;
+import com.zenfield.core.Files;
+import com.zenfield.database.configuration.Environment;
+import com.zenfield.database.dialect.Dialect;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Snapshots of the database taken after the steps of populate, like the
+ * layers of an image. A layer is named by the hash of the create script and
+ * of every file applied up to it, so a populate can restore the deepest
+ * layer whose steps did not change and replay only the rest. Above a total
+ * size the least recently used layers are dropped; the usage is recorded in
+ * a file in the home directory.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+class PopulateLayers {
+
+	private static final String PREFIX = "populate_";
+	private static final int HASH_LENGTH = 16;
+	private static final String USAGE_FILENAME = ".db-layers";
+
+	private final Dialect dialect;
+	private final Environment environment;
+	private final String key;
+	private final long limit;
+	private final File usage = new File(Files.getHome(), USAGE_FILENAME);
+
+	/**
+	 * @param dialect
+	 * @param environment
+	 * @param project the name of the project
+	 * @param limit the total size of the layers in bytes
+	 */
+	PopulateLayers(Dialect dialect, Environment environment, String project, long limit) {
+		Check.notNull(dialect);
+		Check.notNull(environment);
+		Check.notEmpty(project);
+		Check.positive(limit);
+
+		this.dialect = dialect;
+		this.environment = environment;
+		this.key = project + "/" + environment.getName();
+		this.limit = limit;
+	}
+
+	/**
+	 * @param create
+	 * @param steps the files of populate in the order of execution
+	 * @return the name of the layer after the create script, then the name
+	 * of the layer after each file; the generators are hashed with their
+	 * directory and inputs like in the {@link GeneratorCache}
+	 * @throws IOException
+	 */
+	static List<String> names(File create, List<File> steps) throws IOException {
+		Check.notNull(create);
+		Check.noneNull(steps);
+
+		List<String> names = new ArrayList<>();
+		String hash = Digest.sha256().update("create").update(create).toHex();
+		names.add(PREFIX + hash.substring(0, HASH_LENGTH));
+
+		Map<File, String> trees = new HashMap<>();
+		for (File step : steps) {
+			Digest digest = Digest.sha256().update(hash).update(step.getName());
+			if (step.getName().toLowerCase().endsWith(".sql")) {
+				digest.update(step);
+
+			} else {
+				digest.update(GeneratorCache.hash(step, trees));
+			}
+
+			hash = digest.toHex();
+			names.add(PREFIX + hash.substring(0, HASH_LENGTH));
+		}
+
+		return names;
+	}
+
+	/**
+	 * @param names
+	 * @return the index of the last layer saved on the server, or -1
+	 */
+	int findDeepest(List<String> names) {
+		Check.noneNull(names);
+
+		List<String> saved = dialect.listSnapshots(environment);
+		if (saved == null) {
+			return -1;
+		}
+
+		for (int i = names.size() - 1; i >= 0; i--) {
+			if (saved.contains(names.get(i))) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	boolean restore(String name) {
+		Check.notEmpty(name);
+
+		if (!dialect.restoreSnapshot(environment, name)) {
+			return false;
+		}
+
+		Map<String, long[]> layers = load();
+		long[] layer = layers.get(name);
+		layers.put(name, new long[]{System.currentTimeMillis(), layer == null ? -1 : layer[1]});
+		store(layers);
+		return true;
+	}
+
+	/**
+	 * Saves the layer and evicts the least recently used ones above the limit.
+	 *
+	 * @param name
+	 * @return success
+	 */
+	boolean save(String name) {
+		Check.notEmpty(name);
+
+		if (!dialect.saveSnapshot(environment, name)) {
+			System.err.println("Cannot save the populate layer " + name);
+			return false;
+		}
+
+		Map<String, long[]> layers = load();
+		layers.put(name, new long[]{System.currentTimeMillis(), dialect.sizeOfSnapshot(environment, name)});
+		evict(layers, name);
+		store(layers);
+		return true;
+	}
+
+	private void evict(Map<String, long[]> layers, String keep) {
+		Check.notNull(layers);
+		Check.notEmpty(keep);
+
+		List<String> saved = dialect.listSnapshots(environment);
+		if (saved == null) {
+			return;
+		}
+
+		// layers saved by other machines or with a lost usage file are the
+		// least recently used ones
+		layers.keySet().retainAll(saved);
+		saved.stream()
+				.filter(name -> name.startsWith(PREFIX) && !layers.containsKey(name))
+				.forEach(name -> layers.put(name, new long[]{0, dialect.sizeOfSnapshot(environment, name)}));
+
+		long total = layers.values().stream().mapToLong(layer -> Math.max(0, layer[1])).sum();
+
+		List<String> order = layers.entrySet().stream()
+				.sorted(Comparator.comparingLong(entry -> entry.getValue()[0]))
+				.map(Map.Entry::getKey)
+				.collect(Collectors.toList());
+
+		for (String name : order) {
+			if (total <= limit) {
+				break;
+			}
+
+			if (name.equals(keep) || !dialect.dropSnapshot(environment, name)) {
+				continue;
+			}
+
+			total -= Math.max(0, layers.remove(name)[1]);
+			System.err.println("Evicted populate layer " + name);
+		}
+	}
+
+	/**
+	 * @return the layers of this project and environment, the time of the
+	 * last use and the size
+	 */
+	private Map<String, long[]> load() {
+		Map<String, long[]> layers = new LinkedHashMap<>();
+		if (!usage.isFile()) {
+			return layers;
+		}
+
+		try {
+			for (String line : Files.loadLines(usage)) {
+				String[] fields = line.split("\t");
+				if (fields.length == 4 && fields[0].equals(key)) {
+					layers.put(fields[1], new long[]{Long.parseLong(fields[2]), Long.parseLong(fields[3])});
+				}
+			}
+
+		} catch (IOException | NumberFormatException e) {
+			System.err.println("Cannot read the usage of the populate layers: " + usage);
+		}
+
+		return layers;
+	}
+
+	private void store(Map<String, long[]> layers) {
+		Check.notNull(layers);
+
+		try {
+			StringBuilder text = new StringBuilder();
+			if (usage.isFile()) {
+				for (String line : Files.loadLines(usage)) {
+					if (!line.startsWith(key + "\t")) {
+						text.append(line).append('\n');
+					}
+				}
+			}
+
+			for (Map.Entry<String, long[]> entry : layers.entrySet()) {
+				text.append(key).append('\t').append(entry.getKey())
+						.append('\t').append(entry.getValue()[0])
+						.append('\t').append(entry.getValue()[1]).append('\n');
+			}
+
+			Files.write(text.toString(), usage);
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+		}
+	}
+}
@@ -0,0 +1,545 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.command;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Exceptions;
+import com.zenfield.core.SqlLexer;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The order of the populate files as a graph: a file waits for the earlier
+ * files that touch the same tables or tables linked to them by a foreign key
+ * of the create script. A file that deletes also waits for the files of the
+ * tables that the delete may cascade into. Files with statements that are
+ * not understood, like DDL, and executable scripts run alone, after every
+ * earlier file and before every later one.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+class PopulateSchedule {
+
+	private static final Set<String> TABLE_KEYWORDS = new HashSet<>(Arrays.asList("INTO", "FROM", "JOIN", "UPDATE", "TABLE", "TABLES", "COPY", "TRUNCATE", "USING"));
+	private static final Set<String> MODIFIERS = new HashSet<>(Arrays.asList("ONLY", "IGNORE", "LOW_PRIORITY", "HIGH_PRIORITY", "DELAYED", "QUICK", "TABLE", "IF", "NOT", "EXISTS"));
+	private static final Set<String> NOT_TABLES = new HashSet<>(Arrays.asList("STDIN", "STDOUT", "SELECT", "LATERAL"));
+	private static final Set<String> SESSION_STATEMENTS = new HashSet<>(Arrays.asList("SET", "RESET", "BEGIN", "START", "COMMIT", "ROLLBACK", "UNLOCK"));
+	private static final Set<String> DATA_STATEMENTS = new HashSet<>(Arrays.asList("INSERT", "REPLACE", "COPY", "UPDATE", "DELETE", "TRUNCATE", "LOAD", "LOCK", "SELECT"));
+	private static final Set<String> CASCADING_STATEMENTS = new HashSet<>(Arrays.asList("REPLACE", "UPDATE", "DELETE", "TRUNCATE"));
+	private static final Pattern SESSION_COMMAND = Pattern.compile("(?i)^\\s*(DELIMITER|\\\\(set|unset|echo|restrict|unrestrict))\\b");
+	private static final Pattern SET_CONFIG = Pattern.compile("(?i)\\bset_config\\s*\\(");
+	private static final Pattern SETVAL = Pattern.compile("(?i)\\bsetval\\s*\\(\\s*'([^']+)'");
+	private static final String SEQUENCE_PREFIX = "sequence ";
+
+	private final List<File> steps;
+	private final List<Set<Integer>> dependencies = new ArrayList<>();
+	private final boolean[] alone;
+	private final int[] levels;
+
+	private PopulateSchedule(List<File> steps) {
+		Check.noneNull(steps);
+
+		this.steps = steps;
+		this.alone = new boolean[steps.size()];
+		this.levels = new int[steps.size()];
+	}
+
+	/**
+	 * @param create the create script, the source of the foreign keys
+	 * @param steps the files of populate in the order of execution
+	 * @param syntax
+	 * @return the schedule
+	 * @throws IOException
+	 */
+	static PopulateSchedule plan(File create, List<File> steps, SqlLexer.Syntax syntax) throws IOException {
+		Check.notNull(create);
+		Check.noneNull(steps);
+		Check.notNull(syntax);
+
+		Map<String, Set<String>> linked = new HashMap<>();
+		Map<String, Set<String>> referencing = new HashMap<>();
+		readForeignKeys(create, syntax, linked, referencing);
+
+		PopulateSchedule schedule = new PopulateSchedule(steps);
+		List<Set<String>> touched = new ArrayList<>();
+		List<Set<String>> reached = new ArrayList<>();
+
+		for (int i = 0; i < steps.size(); i++) {
+			Set<String> tables = new HashSet<>();
+			Set<String> cascading = new HashSet<>();
+
+			File step = steps.get(i);
+			schedule.alone[i] = !step.getName().toLowerCase().endsWith(".sql")
+					|| !readTables(step, syntax, linked.keySet(), tables, cascading);
+
+			Set<String> reach = new HashSet<>(tables);
+			tables.forEach(table -> reach.addAll(linked.getOrDefault(table, Collections.emptySet())));
+			cascading.forEach(table -> collect(table, referencing, reach));
+
+			touched.add(tables);
+			reached.add(reach);
+		}
+
+		for (int j = 0; j < steps.size(); j++) {
+			Set<Integer> waits = new HashSet<>();
+			int level = 1;
+
+			for (int i = 0; i < j; i++) {
+				if (schedule.alone[i] || schedule.alone[j]
+						|| !Collections.disjoint(reached.get(i), touched.get(j))
+						|| !Collections.disjoint(touched.get(i), reached.get(j))) {
+					waits.add(i);
+					level = Math.max(level, schedule.levels[i] + 1);
+				}
+			}
+
+			schedule.dependencies.add(waits);
+			schedule.levels[j] = level;
+		}
+
+		return schedule;
+	}
+
+	void print() {
+		int depth = Arrays.stream(levels).max().orElse(0);
+		System.err.format("Schedule of %d files in %d levels:%n", steps.size(), depth);
+
+		for (int i = 0; i < steps.size(); i++) {
+			System.err.format("- %-40s level %d%s%n", steps.get(i).getName(), levels[i], alone[i] ? ", alone" : "");
+		}
+	}
+
+	/**
+	 * Runs the tasks of the files, each one when the tasks of the earlier
+	 * files it depends on are done, and reports the speedup.
+	 *
+	 * @param jobs
+	 * @param tasks the task of each file, in the order of the files
+	 * @return true if every task succeeded
+	 */
+	boolean run(int jobs, List<Callable<Boolean>> tasks) {
+		Check.positive(jobs);
+		Check.noneNull(tasks);
+		Check.that(tasks.size() == steps.size());
+
+		int count = steps.size();
+		long[] durations = new long[count];
+		boolean[] results = new boolean[count];
+		int[] waiting = new int[count];
+		List<List<Integer>> dependents = new ArrayList<>();
+
+		for (int i = 0; i < count; i++) {
+			dependents.add(new ArrayList<>());
+		}
+
+		for (int j = 0; j < count; j++) {
+			waiting[j] = dependencies.get(j).size();
+			for (int i : dependencies.get(j)) {
+				dependents.get(i).add(j);
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(jobs);
+		CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+
+		try {
+			for (int i = 0; i < count; i++) {
+				if (waiting[i] == 0) {
+					submit(completion, i, tasks.get(i), durations, results);
+				}
+			}
+
+			for (int done = 0; done < count; done++) {
+				int i = completion.take().get();
+				for (int j : dependents.get(i)) {
+					if (--waiting[j] == 0) {
+						submit(completion, j, tasks.get(j), durations, results);
+					}
+				}
+			}
+
+		} catch (InterruptedException | ExecutionException e) {
+			Exceptions.print(e, System.err);
+			return false;
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		long busy = Arrays.stream(durations).sum();
+		System.err.format("Populated %d files in %.1f s on %d sessions, %.1f s of loading, %.1fx speedup%n",
+				count, elapsed / 1000.0, jobs, busy / 1000.0, (double) busy / elapsed);
+
+		for (boolean result : results) {
+			if (!result) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static void submit(CompletionService<Integer> completion, int index, Callable<Boolean> task, long[] durations, boolean[] results) {
+		completion.submit(() -> {
+			long start = System.currentTimeMillis();
+			try {
+				results[index] = Boolean.TRUE.equals(task.call());
+
+			} catch (Exception e) {
+				Exceptions.print(e, System.err);
+
+			} finally {
+				durations[index] = System.currentTimeMillis() - start;
+			}
+
+			return index;
+		});
+	}
+
+	private static void collect(String table, Map<String, Set<String>> referencing, Set<String> tables) {
+		for (String child : referencing.getOrDefault(table, Collections.emptySet())) {
+			if (tables.add(child)) {
+				collect(child, referencing, tables);
+			}
+		}
+	}
+
+	/**
+	 * Reads the foreign keys of the CREATE TABLE and ALTER TABLE statements.
+	 *
+	 * @param create
+	 * @param syntax
+	 * @param linked the tables linked to each table in either direction, with
+	 * every table of the script as a key
+	 * @param referencing the tables referencing each table
+	 * @throws IOException
+	 */
+	private static void readForeignKeys(File create, SqlLexer.Syntax syntax, Map<String, Set<String>> linked, Map<String, Set<String>> referencing) throws IOException {
+		try (SqlLexer lexer = SqlLexer.open(create, syntax)) {
+			while (lexer.next()) {
+				if (lexer.getKind() != SqlLexer.Kind.STATEMENT) {
+					continue;
+				}
+
+				List<Token> tokens = tokenize(lexer.getText(), syntax);
+				if (tokens.isEmpty() || !tokens.get(0).is("CREATE") && !tokens.get(0).is("ALTER")) {
+					continue;
+				}
+
+				String table = null;
+				for (int i = 0; i < tokens.size(); i++) {
+					if (table == null && tokens.get(i).is("TABLE")) {
+						table = nameAfter(tokens, i);
+						if (table != null) {
+							linked.computeIfAbsent(table, key -> new HashSet<>());
+						}
+
+					} else if (table != null && tokens.get(i).is("REFERENCES")) {
+						String parent = nameAfter(tokens, i);
+						if (parent != null && !parent.equals(table)) {
+							linked.get(table).add(parent);
+							linked.computeIfAbsent(parent, key -> new HashSet<>()).add(table);
+							referencing.computeIfAbsent(parent, key -> new HashSet<>()).add(table);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param step
+	 * @param syntax
+	 * @param known the tables of the create script
+	 * @param tables the tables touched by the file
+	 * @param cascading the tables whose rows may be deleted
+	 * @return false if a statement is not understood
+	 * @throws IOException
+	 */
+	private static boolean readTables(File step, SqlLexer.Syntax syntax, Set<String> known, Set<String> tables, Set<String> cascading) throws IOException {
+		try (SqlLexer lexer = SqlLexer.open(step, syntax)) {
+			while (lexer.next()) {
+				if (lexer.getKind() == SqlLexer.Kind.COMMAND) {
+					if (!SESSION_COMMAND.matcher(lexer.getText()).find()) {
+						return false;
+					}
+					continue;
+				}
+
+				if (lexer.getKind() != SqlLexer.Kind.STATEMENT) {
+					continue;
+				}
+
+				String text = lexer.getText();
+				List<Token> tokens = tokenize(text, syntax);
+				if (tokens.isEmpty() || SESSION_STATEMENTS.stream().anyMatch(tokens.get(0)::is)) {
+					continue;
+				}
+
+				String statement = tokens.get(0).text.toUpperCase();
+				if (tokens.get(0).quoted || !DATA_STATEMENTS.contains(statement)) {
+					return false;
+				}
+
+				Set<String> found = new HashSet<>();
+				for (int i = 0; i < tokens.size(); i++) {
+					if (!tokens.get(i).quoted && TABLE_KEYWORDS.contains(tokens.get(i).text.toUpperCase())) {
+						String table = nameAfter(tokens, i);
+						if (table != null) {
+							found.add(table);
+						}
+					}
+				}
+
+				if (statement.equals("SELECT") && found.isEmpty()) {
+					if (SET_CONFIG.matcher(text).find()) {
+						continue;
+					}
+
+					Matcher setval = SETVAL.matcher(text);
+					while (setval.find()) {
+						found.add(sequenceOwner(setval.group(1), known));
+					}
+				}
+
+				if (found.isEmpty()) {
+					return false;
+				}
+
+				tables.addAll(found);
+				if (CASCADING_STATEMENTS.contains(statement)) {
+					cascading.addAll(found);
+				}
+			}
+
+			return true;
+		}
+	}
+
+	/**
+	 * @param sequence
+	 * @param known
+	 * @return the longest table whose name starts the name of the sequence,
+	 * or the sequence itself
+	 */
+	private static String sequenceOwner(String sequence, Set<String> known) {
+		String name = sequence.replace("\"", "").toLowerCase();
+		name = name.substring(name.lastIndexOf('.') + 1);
+
+		String owner = null;
+		for (String table : known) {
+			if (name.startsWith(table + "_") && (owner == null || table.length() > owner.length())) {
+				owner = table;
+			}
+		}
+
+		return owner != null ? owner : SEQUENCE_PREFIX + name;
+	}
+
+	/**
+	 * @param tokens
+	 * @param index the index of a keyword
+	 * @return the table named after the keyword and its modifiers, or null
+	 */
+	private static String nameAfter(List<Token> tokens, int index) {
+		int i = index + 1;
+		while (i < tokens.size() && !tokens.get(i).quoted && MODIFIERS.contains(tokens.get(i).text.toUpperCase())) {
+			i++;
+		}
+
+		if (i >= tokens.size() || !tokens.get(i).isName() || !tokens.get(i).quoted && NOT_TABLES.contains(tokens.get(i).text.toUpperCase())) {
+			return null;
+		}
+
+		return tokens.get(i).text.toLowerCase();
+	}
+
+	/**
+	 * Splits a statement into words, quoted identifiers and symbols. Literals
+	 * and comments are skipped, qualified names are reduced to their last
+	 * part. The rows after a VALUES keyword are skipped up to a subquery,
+	 * which may read other tables.
+	 *
+	 * @param text
+	 * @param syntax
+	 * @return the tokens
+	 */
+	private static List<Token> tokenize(String text, SqlLexer.Syntax syntax) {
+		Check.notNull(text);
+		Check.notNull(syntax);
+
+		List<Token> tokens = new ArrayList<>();
+		int length = text.length();
+		int i = 0;
+		boolean rows = false;
+
+		while (i < length) {
+			char c = text.charAt(i);
+
+			if (Character.isWhitespace(c)) {
+				i++;
+
+			} else if (c == '-' && text.startsWith("--", i) || c == '#' && syntax == SqlLexer.Syntax.MYSQL) {
+				int end = text.indexOf('\n', i);
+				i = end < 0 ? length : end + 1;
+
+			} else if (c == '/' && text.startsWith("/*", i)) {
+				int end = text.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 2;
+
+			} else if (c == '\'') {
+				i = skipLiteral(text, i, syntax == SqlLexer.Syntax.MYSQL);
+
+			} else if (Character.isDigit(c)) {
+				while (i < length && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '.')) {
+					i++;
+				}
+
+			} else if (c == '"' || c == '`' || Character.isLetter(c) || c == '_') {
+				StringBuilder name = new StringBuilder();
+				boolean quoted = false;
+
+				while (true) {
+					name.setLength(0);
+					quoted = text.charAt(i) == '"' || text.charAt(i) == '`';
+					i = readName(text, i, name);
+
+					if (i + 1 < length && text.charAt(i) == '.' && isNameStart(text.charAt(i + 1))) {
+						i++;
+						continue;
+					}
+					break;
+				}
+
+				if (!quoted && name.toString().equalsIgnoreCase("VALUES")) {
+					rows = true;
+
+				} else if (!rows || !quoted && name.toString().equalsIgnoreCase("SELECT")) {
+					rows = false;
+					tokens.add(new Token(name.toString(), quoted));
+				}
+
+			} else {
+				if (!rows) {
+					tokens.add(new Token(String.valueOf(c), false));
+				}
+				i++;
+			}
+		}
+
+		return tokens;
+	}
+
+	private static boolean isNameStart(char c) {
+		return c == '"' || c == '`' || Character.isLetter(c) || c == '_';
+	}
+
+	private static int readName(String text, int start, StringBuilder name) {
+		char quote = text.charAt(start);
+		if (quote == '"' || quote == '`') {
+			int i = start + 1;
+			while (i < text.length()) {
+				char c = text.charAt(i);
+				if (c == quote) {
+					if (i + 1 < text.length() && text.charAt(i + 1) == quote) {
+						name.append(c);
+						i += 2;
+						continue;
+					}
+					return i + 1;
+				}
+
+				name.append(c);
+				i++;
+			}
+
+			return i;
+		}
+
+		int i = start;
+		while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_' || text.charAt(i) == '$')) {
+			name.append(text.charAt(i));
+			i++;
+		}
+
+		return i;
+	}
+
+	private static int skipLiteral(String text, int start, boolean backslash) {
+		int i = start + 1;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			if (backslash && c == '\\') {
+				i += 2;
+
+			} else if (c == '\'') {
+				if (i + 1 < text.length() && text.charAt(i + 1) == '\'') {
+					i += 2;
+				} else {
+					return i + 1;
+				}
+
+			} else {
+				i++;
+			}
+		}
+
+		return i;
+	}
+
+	private static final class Token {
+
+		private final String text;
+		private final boolean quoted;
+
+		private Token(String text, boolean quoted) {
+			this.text = text;
+			this.quoted = quoted;
+		}
+
+		private boolean is(String keyword) {
+			return !quoted && text.equalsIgnoreCase(keyword);
+		}
+
+		private boolean isName() {
+			return quoted || Character.isLetter(text.charAt(0)) || text.charAt(0) == '_';
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.command;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.UnhandledCaseException;
+import com.zenfield.database.configuration.Environment;
+import com.zenfield.database.configuration.Parameters;
+import com.zenfield.database.configuration.ProjectConfiguration;
+import com.zenfield.database.configuration.ReadOnly;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Saves and restores named copies of the database kept on the server.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public class SnapshotCommand extends AbstractCommand {
+
+	private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_]+");
+
+	public static enum Action {
+		SAVE, RESTORE, LIST, DROP;
+
+		public static Action parse(String string) {
+			for (Action action : values()) {
+				if (action.name().equalsIgnoreCase(string)) {
+					return action;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private final Action action;
+	private final String name;
+	private final Environment destination;
+
+	public SnapshotCommand(ProjectConfiguration configuration, Parameters parameters, Action action, String name, Environment destination) {
+		super(configuration, parameters);
+
+		Check.notNull(action);
+		// name
+		Check.notNull(destination);
+		this.action = action;
+		this.name = name;
+		this.destination = destination;
+	}
+
+	@Override
+	public Environment getDestination() {
+		return destination;
+	}
+
+	@Override
+	public boolean run(Environment unused) {
+		if (action == Action.LIST) {
+			List<String> snapshots = getDialect().listSnapshots(destination);
+			if (snapshots == null) {
+				return false;
+			}
+
+			System.out.println(snapshots.isEmpty() ? "No snapshots" : "Snapshots:");
+			snapshots.forEach(snapshot -> System.out.println("- " + snapshot));
+			return true;
+		}
+
+		if (name == null || !NAME.matcher(name).matches()) {
+			System.err.println("Invalid snapshot name, use letters, digits and underscores: " + name);
+			return false;
+		}
+
+		if (destination.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot use snapshots: destination is read-only");
+			return false;
+		}
+
+		if (!canWrite(destination)) {
+			return false;
+		}
+
+		long start = System.currentTimeMillis();
+		boolean success;
+
+		switch (action) {
+			case SAVE:
+				success = getDialect().saveSnapshot(destination, name);
+				break;
+
+			case RESTORE:
+				success = getDialect().restoreSnapshot(destination, name);
+				break;
+
+			case DROP:
+				success = getDialect().dropSnapshot(destination, name);
+				break;
+
+			default:
+				throw new UnhandledCaseException(action);
+		}
+
+		if (!success) {
+			System.err.println("Snapshot " + action.name().toLowerCase() + " failed: " + name);
+			return false;
+		}
+
+		System.err.format("Snapshot %s: %s in %.1f s%n", action.name().toLowerCase(), name, (System.currentTimeMillis() - start) / 1000.0);
+		return true;
+	}
+}
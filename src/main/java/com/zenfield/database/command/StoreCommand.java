@@ -24,13 +24,23 @@ package com.zenfield.database.command;
 import com.zenfield.core.Check;
 import com.zenfield.core.Exceptions;
 import com.zenfield.core.Files;
+import com.zenfield.core.Parallel;
+import com.zenfield.core.SqlLexer;
 import com.zenfield.database.configuration.Environment;
 import com.zenfield.database.configuration.Parameters;
 import com.zenfield.database.configuration.ProjectConfiguration;
+import com.zenfield.database.dialect.TableInfo;
 import java.io.File;
 import java.io.IOException;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -39,6 +49,8 @@ import java.util.stream.Collectors;
  */
 public class StoreCommand extends AbstractCommand {
 
+	private static final Pattern CREATE_TABLE = Pattern.compile("(?is)^\\s*CREATE\\s+TABLE\\s+(IF\\s+NOT\\s+EXISTS\\s+)?");
+
 	private final String directory;
 
 	public StoreCommand(ProjectConfiguration configuration, Parameters parameters, String directory) {
@@ -86,6 +98,10 @@ public class StoreCommand extends AbstractCommand {
 			spot.delete();
 		}
 
+		if (getParameters().getJobs() > 1) {
+			return parallel(source, file, tablesFromCreate, getParameters().getJobs());
+		}
+
 		boolean success = true;
 
 		int i = 0;
@@ -112,27 +128,99 @@ public class StoreCommand extends AbstractCommand {
 		return success;
 	}
 
-	public List<String> findTablesFromCreate() {
+	private boolean parallel(Environment source, File directory, List<String> tables, int jobs) {
+		Check.notNull(source);
+		Check.notNull(directory);
+		Check.noneNull(tables);
+		Check.positive(jobs);
+
+		List<TableInfo> infos = getDialect().describeTables(source);
+		if (infos == null) {
+			return false;
+		}
+
+		Map<String, TableInfo> sizes = new HashMap<>();
+		infos.forEach(info -> sizes.put(info.getName(), info));
+
+		Map<String, File> files = new LinkedHashMap<>();
+		List<TableInfo> selected = new ArrayList<>();
+
+		int i = 0;
+		for (String table : tables) {
+			i++;
+
+			if (new File(directory, table + ".skip").exists()) {
+				System.err.format("- %-32sskipping%n", table);
+				continue;
+			}
+
+			files.put(table, new File(directory, String.format("dump-%02d-%s.sql", i, table)));
+			selected.add(sizes.getOrDefault(table, new TableInfo(table, -1, 0)));
+		}
+
+		// the ranges of a split table are dumped into parts and joined in order
+		Map<String, List<File>> parts = new HashMap<>();
+		List<Callable<Boolean>> tasks = new ArrayList<>();
+		Set<String> failed = ConcurrentHashMap.newKeySet();
+
 		try {
-			List<String> lines = Files.loadLines(getConfiguration().getCreate());
-			if (lines == null) {
-				return null;
+			for (TableChunk chunk : plan(source, selected, jobs)) {
+				File target = files.get(chunk.getTable());
+
+				if (chunk.getRange() != null) {
+					target = File.createTempFile("db-", ".sql");
+					parts.computeIfAbsent(chunk.getTable(), key -> new ArrayList<>()).add(target);
+				}
+
+				File output = target;
+				tasks.add(() -> {
+					if (getDialect().dump(source, chunk.getTable(), chunk.getRange(), output)) {
+						return true;
+					}
+
+					failed.add(chunk.getTable());
+					return false;
+				});
 			}
 
-			if (lines.isEmpty()) {
-				return Collections.emptyList();
+			boolean success = Parallel.run(jobs, tasks);
+
+			for (Map.Entry<String, File> entry : files.entrySet()) {
+				List<File> tableParts = parts.get(entry.getKey());
+				if (tableParts != null && !failed.contains(entry.getKey())) {
+					Files.delete(entry.getValue());
+					for (File part : tableParts) {
+						Files.copy(part, entry.getValue(), true);
+					}
+				}
+
+				System.err.format("- %-32s%s%n", entry.getKey(), failed.contains(entry.getKey()) ? "error" : "ok");
 			}
 
-			List<String> tables = lines.stream()
-					.filter(line -> line != null && line.contains("CREATE TABLE"))
-					.map(line -> line.replace("CREATE TABLE", ""))
-					.map(line -> line.replace("IF NOT EXISTS", ""))
-					.map(line -> line.replace("(", ""))
-					.map(line -> line.replace("'", ""))
-					.map(line -> line.replace("`", ""))
-					.map(line -> line.trim())
-					.filter(line -> !line.isEmpty())
-					.collect(Collectors.toList());
+			return success;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+
+		} finally {
+			parts.values().forEach(list -> list.forEach(Files::delete));
+		}
+	}
+
+	public List<String> findTablesFromCreate() {
+		File create = getConfiguration().getCreate();
+		List<String> tables = new ArrayList<>();
+
+		try (SqlLexer lexer = SqlLexer.open(create, getDialect().getSyntax())) {
+			while (lexer.next()) {
+				if (lexer.getKind() == SqlLexer.Kind.STATEMENT && lexer.startsWith("CREATE", "TABLE")) {
+					String table = parseTableName(lexer.getText());
+					if (!table.isEmpty()) {
+						tables.add(table);
+					}
+				}
+			}
 
 			return tables;
 
@@ -141,4 +229,37 @@ public class StoreCommand extends AbstractCommand {
 			return null;
 		}
 	}
+
+	/**
+	 * @param statement a CREATE TABLE statement
+	 * @return the name of the table without quotes
+	 */
+	private static String parseTableName(String statement) {
+		Check.notNull(statement);
+
+		String rest = CREATE_TABLE.matcher(statement).replaceFirst("");
+
+		StringBuilder name = new StringBuilder();
+		char quote = 0;
+		for (char c : rest.toCharArray()) {
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				} else {
+					name.append(c);
+				}
+
+			} else if (c == '`' || c == '"') {
+				quote = c;
+
+			} else if (c == '(' || Character.isWhitespace(c)) {
+				break;
+
+			} else {
+				name.append(c);
+			}
+		}
+
+		return name.toString();
+	}
 }
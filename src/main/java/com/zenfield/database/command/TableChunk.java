@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.command;
+
+import com.zenfield.core.Check;
+import com.zenfield.database.dialect.Range;
+
+/**
+ * A unit of work of a parallel dump: a whole table or a range of its rows.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public class TableChunk {
+
+	private final String table;
+	private final Range range;
+	private final long bytes;
+
+	public TableChunk(String table, Range range, long bytes) {
+		Check.notEmpty(table);
+		// range
+		// bytes
+
+		this.table = table;
+		this.range = range;
+		this.bytes = bytes;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * @return the range of the rows, or null for the whole table
+	 */
+	public Range getRange() {
+		return range;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public String toString() {
+		return range == null ? table : table + " " + range;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.configuration;
+
+import com.zenfield.core.Strings;
+
+/**
+ * The bulk load profile of an environment. With the profile the checks and
+ * the durability of the database are relaxed while data is loaded.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public enum BulkLoad {
+
+	OFF("0", "false", "no"),
+	ON("1", "true", "yes"),
+	/**
+	 * Also loads into unlogged tables where the dialect supports it.
+	 */
+	UNLOGGED("unlogged");
+
+	private final String[] items;
+
+	private BulkLoad(String... items) {
+		this.items = items;
+	}
+
+	/**
+	 * @param string
+	 * @return the profile, OFF if the string is empty, or null if it is
+	 * invalid
+	 */
+	public static BulkLoad parse(String string) {
+		if (Strings.isEmpty(string)) {
+			return OFF;
+		}
+
+		for (BulkLoad bulkLoad : values()) {
+			for (String item : bulkLoad.items) {
+				if (item.equalsIgnoreCase(string)) {
+					return bulkLoad;
+				}
+			}
+		}
+
+		return null;
+	}
+}
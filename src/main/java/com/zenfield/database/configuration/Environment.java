@@ -39,8 +39,9 @@ public class Environment {
 	private final String sshHostname;
 	private final String sshUsername;
 	private final ReadOnly readOnly;
+	private final BulkLoad bulkLoad;
 
-	private Environment(String name, String username, String password, String database, String hostname, String sshHostname, String sshUsername, ReadOnly readOnly) {
+	private Environment(String name, String username, String password, String database, String hostname, String sshHostname, String sshUsername, ReadOnly readOnly, BulkLoad bulkLoad) {
 		Check.notEmpty(name);
 		Check.notEmpty(username);
 		Check.notEmpty(password);
@@ -49,6 +50,7 @@ public class Environment {
 		// readOnly
 		// sshHostname
 		// sshUsername
+		Check.notNull(bulkLoad);
 
 		this.name = name;
 		this.username = username;
@@ -58,6 +60,7 @@ public class Environment {
 		this.sshHostname = sshHostname;
 		this.sshUsername = sshUsername;
 		this.readOnly = readOnly;
+		this.bulkLoad = bulkLoad;
 	}
 
 	public String getName() {
@@ -104,6 +107,10 @@ public class Environment {
 		return readOnly;
 	}
 
+	public BulkLoad getBulkLoad() {
+		return bulkLoad;
+	}
+
 	public boolean same(Environment other) {
 		return other != null
 				&& Strings.isEqualIgnoreCase(database, other.database)
@@ -155,7 +162,21 @@ public class Environment {
 			return null;
 		}
 
-		return new Environment(name, username, password, database, hostname, sshHostname, sshUsername, readOnly);
+		String bulkLoadValue = map.get("bulk-load");
+		BulkLoad bulkLoad = BulkLoad.parse(bulkLoadValue);
+
+		if (bulkLoad == null) {
+			System.err.println("Error: invalid bulk-load value: " + bulkLoadValue);
+			return null;
+		}
+
+		// the profile gives up durability, it is meant for development databases
+		if (bulkLoad != BulkLoad.OFF && readOnly != ReadOnly.FALSE) {
+			System.err.println("Error: bulk-load requires readonly=false for environment: " + name);
+			return null;
+		}
+
+		return new Environment(name, username, password, database, hostname, sshHostname, sshUsername, readOnly, bulkLoad);
 	}
 
 	public boolean isSsh() {
@@ -40,6 +40,12 @@ public class Parameters {
 	private final boolean help;
 	private final boolean skipHooks;
 	private final boolean confirmHooks;
+	private final boolean stream;
+	private final boolean exact;
+	private final boolean deferIndexes;
+	private final Integer jobs;
+	private final int commitEvery;
+	private final int commitSize;
 
 	private Parameters(String[] args) {
 		OptionParser parser = new OptionParser();
@@ -50,6 +56,13 @@ public class Parameters {
 		parser.accepts("skip-hooks");
 		parser.accepts("c");
 		parser.accepts("confirm-hooks");
+		parser.accepts("stream");
+		parser.accepts("exact");
+		parser.accepts("defer-indexes");
+		parser.accepts("j").withRequiredArg().ofType(Integer.class);
+		parser.accepts("jobs").withRequiredArg().ofType(Integer.class);
+		parser.accepts("commit-every").withRequiredArg().ofType(Integer.class);
+		parser.accepts("commit-size").withRequiredArg().ofType(Integer.class);
 
 		OptionSet options = parser.parse(args);
 
@@ -58,6 +71,12 @@ public class Parameters {
 		help = options.has("h") || options.has("help");
 		skipHooks = options.has("s") || options.has("skip-hooks");
 		confirmHooks = options.has("c") || options.has("confirm-hooks");
+		stream = options.has("stream");
+		exact = options.has("exact");
+		deferIndexes = options.has("defer-indexes");
+		jobs = parseJobs(options);
+		commitEvery = options.has("commit-every") ? (Integer) options.valueOf("commit-every") : 0;
+		commitSize = options.has("commit-size") ? (Integer) options.valueOf("commit-size") : 0;
 
 		if (Strings.isEmpty(command)) {
 			throw new RuntimeException("Missing command");
@@ -66,6 +85,14 @@ public class Parameters {
 		if (skipHooks && confirmHooks) {
 			throw new RuntimeException("Invalid combination of options -s and -c");
 		}
+
+		if (jobs != null && jobs < 1) {
+			throw new RuntimeException("Invalid number of jobs: " + jobs);
+		}
+
+		if (commitEvery < 0 || commitSize < 0) {
+			throw new RuntimeException("Invalid chunk size of the commits");
+		}
 	}
 
 	public static Parameters parse(String[] args) {
@@ -105,6 +132,44 @@ public class Parameters {
 		return confirmHooks;
 	}
 
+	public boolean isStream() {
+		return stream;
+	}
+
+	public boolean isExact() {
+		return exact;
+	}
+
+	public boolean isDeferIndexes() {
+		return deferIndexes;
+	}
+
+	public int getJobs() {
+		return getJobs(1);
+	}
+
+	public int getJobs(int defaultValue) {
+		return jobs == null ? defaultValue : jobs;
+	}
+
+	/**
+	 * @return the number of statements committed together, 0 if not limited
+	 */
+	public int getCommitEvery() {
+		return commitEvery;
+	}
+
+	/**
+	 * @return the megabytes committed together, 0 if not limited
+	 */
+	public int getCommitSize() {
+		return commitSize;
+	}
+
+	public boolean isChunkedCommit() {
+		return commitEvery > 0 || commitSize > 0;
+	}
+
 	private static String parseCommand(OptionSet options) {
 		Check.notNull(options);
 
@@ -129,4 +194,18 @@ public class Parameters {
 				.map(object -> object.toString())
 				.collect(Collectors.toList());
 	}
+
+	private static Integer parseJobs(OptionSet options) {
+		Check.notNull(options);
+
+		if (options.has("j")) {
+			return (Integer) options.valueOf("j");
+		}
+
+		if (options.has("jobs")) {
+			return (Integer) options.valueOf("jobs");
+		}
+
+		return null;
+	}
 }
@@ -24,12 +24,17 @@ package com.zenfield.database.configuration;
 import com.zenfield.core.Check;
 import com.zenfield.core.Exceptions;
 import com.zenfield.core.Strings;
+import com.zenfield.database.dialect.Backend;
 import com.zenfield.database.dialect.Dialect;
 import com.zenfield.database.dialect.Dialects;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -43,9 +48,14 @@ public class ProjectConfiguration {
 	private static final String KEY_CREATE = "database.create";
 	private static final String KEY_POPULATE = "database.populate";
 	private static final String KEY_DIALECT = "database.dialect";
+	private static final String KEY_BACKEND = "database.backend";
 
 	private static final String KEY_HOOK_POST_FETCH = "database.post-fetch";
 	private static final String KEY_HOOK_POST_CLEAR = "database.post-clear";
+	private static final String KEY_POPULATE_LAYERS = "database.populate.layers";
+	private static final String KEY_POPULATE_CACHE = "database.populate.cache";
+	private static final String KEY_POST_LOAD_ANALYZE = "database.post-load.analyze";
+	private static final String KEY_POST_LOAD_PREWARM = "database.post-load.prewarm";
 
 	// project
 	private final String name;
@@ -56,14 +66,22 @@ public class ProjectConfiguration {
 	private final Dialect dialect;
 	private final File postFetch;
 	private final File postClear;
+	private final long populateLayers;
+	private final long populateCache;
+	private final boolean analyze;
+	private final List<String> prewarm;
 
-	private ProjectConfiguration(String name, File create, File populate, Dialect dialect, File postFetch, File postClear) {
+	private ProjectConfiguration(String name, File create, File populate, Dialect dialect, File postFetch, File postClear, long populateLayers, long populateCache, boolean analyze, List<String> prewarm) {
 		this.name = name;
 		this.create = create;
 		this.populate = populate;
 		this.dialect = dialect;
 		this.postFetch = postFetch;
 		this.postClear = postClear;
+		this.populateLayers = populateLayers;
+		this.populateCache = populateCache;
+		this.analyze = analyze;
+		this.prewarm = prewarm;
 	}
 
 	public String getName() {
@@ -90,6 +108,38 @@ public class ProjectConfiguration {
 		return postClear;
 	}
 
+	/**
+	 * @return the total size of the cached populate layers in bytes, 0 if the
+	 * layers are not cached
+	 */
+	public long getPopulateLayers() {
+		return populateLayers;
+	}
+
+	/**
+	 * @return the total size of the cached output of the populate generators
+	 * in bytes, 0 if the output is not cached
+	 */
+	public long getPopulateCache() {
+		return populateCache;
+	}
+
+	/**
+	 * @return true if the statistics of the tables are updated after fetch
+	 * and load
+	 */
+	public boolean isAnalyze() {
+		return analyze;
+	}
+
+	/**
+	 * @return the tables read into the cache of the server after fetch and
+	 * load
+	 */
+	public List<String> getPrewarm() {
+		return prewarm;
+	}
+
 	public static ProjectConfiguration load() {
 		File current = new File(System.getProperty("user.dir"));
 		File file = find(current);
@@ -113,7 +163,11 @@ public class ProjectConfiguration {
 					getPopulate(file, map),
 					getDialect(map),
 					getHook(file, KEY_HOOK_POST_FETCH, map),
-					getHook(file, KEY_HOOK_POST_CLEAR, map)
+					getHook(file, KEY_HOOK_POST_CLEAR, map),
+					getMegabytes(KEY_POPULATE_LAYERS, map),
+					getMegabytes(KEY_POPULATE_CACHE, map),
+					getFlag(KEY_POST_LOAD_ANALYZE, map),
+					getList(KEY_POST_LOAD_PREWARM, map)
 			);
 
 		} catch (InvalidConfigurationException e) {
@@ -184,7 +238,17 @@ public class ProjectConfiguration {
 			return null;
 		}
 
-		Dialect dialect = Dialects.of(dialectValue);
+		Backend backend = Backend.CLIENT;
+		String backendValue = map.get(KEY_BACKEND);
+		if (!Strings.isEmpty(backendValue)) {
+			backend = Backend.parse(backendValue);
+			if (backend == null) {
+				System.err.format("Error: unknown %s in the %s file: %s\n", KEY_BACKEND, FILENAME, backendValue);
+				throw new InvalidConfigurationException();
+			}
+		}
+
+		Dialect dialect = Dialects.of(dialectValue, backend);
 		if (dialect == null) {
 			System.err.format("Error: unknown %s in the %s file: %s\n", KEY_DIALECT, FILENAME, dialectValue);
 			throw new InvalidConfigurationException();
@@ -217,6 +281,65 @@ public class ProjectConfiguration {
 		return hook;
 	}
 
+	private static boolean getFlag(String key, Map<String, String> map) throws InvalidConfigurationException {
+		Check.notEmpty(key);
+		Check.notNull(map);
+
+		String value = map.get(key);
+		if (Strings.isEmpty(value)) {
+			return false;
+		}
+
+		switch (value.toLowerCase()) {
+			case "1":
+			case "true":
+			case "yes":
+				return true;
+
+			case "0":
+			case "false":
+			case "no":
+				return false;
+
+			default:
+				System.err.format("Error: invalid %s in the %s file: %s\n", key, FILENAME, value);
+				throw new InvalidConfigurationException();
+		}
+	}
+
+	private static long getMegabytes(String key, Map<String, String> map) throws InvalidConfigurationException {
+		Check.notEmpty(key);
+		Check.notNull(map);
+
+		String value = map.get(key);
+		if (Strings.isEmpty(value)) {
+			return 0;
+		}
+
+		long megabytes = Strings.toLong(value, -1);
+		if (megabytes < 0) {
+			System.err.format("Error: invalid %s in the %s file: %s\n", key, FILENAME, value);
+			throw new InvalidConfigurationException();
+		}
+
+		return megabytes * 1024 * 1024;
+	}
+
+	private static List<String> getList(String key, Map<String, String> map) {
+		Check.notEmpty(key);
+		Check.notNull(map);
+
+		String value = map.get(key);
+		if (Strings.isEmpty(value)) {
+			return Collections.emptyList();
+		}
+
+		return Arrays.stream(value.split(","))
+				.map(String::trim)
+				.filter(item -> !item.isEmpty())
+				.collect(Collectors.toList());
+	}
+
 	private static File find(File path) {
 		if (path == null || !path.isDirectory()) {
 			return null;
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.IOStreams;
+import com.zenfield.core.Processes;
+import com.zenfield.database.configuration.Environment;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Moves directory archives between the local machine and an ssh host as a tar
+ * stream. The remote commands are run in a temporary directory; the archive is
+ * at {@link #REMOTE_ARCHIVE} there.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+final class Archives {
+
+	static final String REMOTE_ARCHIVE = "$d/archive";
+
+	private Archives() {
+	}
+
+	/**
+	 * Runs the remote command that creates the archive and unpacks it into
+	 * the local directory.
+	 *
+	 * @return the exit code of the remote command, or of the local tar if the
+	 * remote command succeeded
+	 */
+	static Integer download(Environment environment, String command, File directory) throws IOException {
+		Check.notNull(environment);
+		Check.notEmpty(command);
+		Check.notNull(directory);
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create the directory: " + directory.getAbsolutePath());
+		}
+
+		ProcessBuilder builder = new ProcessBuilder(Ssh.command(environment,
+				"d=$(mktemp -d) && " + command + " && tar -C " + REMOTE_ARCHIVE + " -cf - .; s=$?; rm -rf $d; exit $s"));
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+		Process remote = builder.start();
+		remote.getOutputStream().close();
+
+		try {
+			Integer exitCode = Processes.execute(
+					new ProcessBuilder("tar", "-xf", "-", "-C", directory.getAbsolutePath()),
+					out -> IOStreams.copy(remote.getInputStream(), out));
+
+			int remoteExitCode = remote.waitFor();
+			return remoteExitCode != 0 ? Integer.valueOf(remoteExitCode) : exitCode;
+
+		} catch (InterruptedException e) {
+			return null;
+
+		} finally {
+			remote.destroy();
+		}
+	}
+
+	/**
+	 * Packs the local directory, unpacks it on the remote host and runs the
+	 * remote command on it.
+	 *
+	 * @return the exit code of the remote command, or of the local tar if the
+	 * remote command succeeded
+	 */
+	static Integer upload(Environment environment, File directory, String command) throws IOException {
+		Check.notNull(environment);
+		Check.notNull(directory);
+		Check.notEmpty(command);
+
+		ProcessBuilder builder = new ProcessBuilder("tar", "-C", directory.getAbsolutePath(), "-cf", "-", ".");
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+		Process local = builder.start();
+		local.getOutputStream().close();
+
+		try {
+			Integer exitCode = Processes.execute(
+					new ProcessBuilder(Ssh.command(environment,
+							"d=$(mktemp -d) && mkdir " + REMOTE_ARCHIVE + " && tar -xf - -C " + REMOTE_ARCHIVE
+							+ " && " + command + "; s=$?; rm -rf $d; exit $s")),
+					out -> IOStreams.copy(local.getInputStream(), out));
+
+			int localExitCode = local.waitFor();
+			return exitCode != null && exitCode == 0 && localExitCode != 0 ? Integer.valueOf(localExitCode) : exitCode;
+
+		} catch (InterruptedException e) {
+			return null;
+
+		} finally {
+			local.destroy();
+		}
+	}
+}
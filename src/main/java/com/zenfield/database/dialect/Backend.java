@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Strings;
+
+/**
+ * The tools a dialect uses to dump and load whole databases.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public enum Backend {
+
+	/**
+	 * Plain SQL scripts through the command line clients.
+	 */
+	CLIENT("client", "cli"),
+	/**
+	 * Directory archives dumped and restored by parallel tools.
+	 */
+	PARALLEL("parallel"),
+	/**
+	 * Catalog queries and table data through JDBC connections, scripts and
+	 * schema dumps through the command line clients.
+	 */
+	JDBC("jdbc");
+
+	private final String[] items;
+
+	private Backend(String... items) {
+		this.items = items;
+	}
+
+	public static Backend parse(String string) {
+		if (Strings.isEmpty(string)) {
+			return null;
+		}
+
+		for (Backend backend : values()) {
+			for (String item : backend.items) {
+				if (item.equalsIgnoreCase(string)) {
+					return backend;
+				}
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Closeables;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A small pool of JDBC connections to one database. At most the given number
+ * of connections are handed out at the same time, the others wait.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+final class ConnectionPool {
+
+	private static final int VALIDATION_TIMEOUT = 2;
+
+	private final String url;
+	private final String username;
+	private final String password;
+	private final Semaphore permits;
+	private final Deque<Connection> idle = new ArrayDeque<>();
+	private boolean closed;
+
+	ConnectionPool(String url, String username, String password, int size) {
+		Check.notEmpty(url);
+		Check.notEmpty(username);
+		Check.notNull(password);
+		Check.positive(size);
+
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.permits = new Semaphore(size);
+	}
+
+	Connection acquire() throws SQLException {
+		permits.acquireUninterruptibly();
+
+		try {
+			Connection connection;
+			while ((connection = poll()) != null) {
+				if (connection.isValid(VALIDATION_TIMEOUT)) {
+					return connection;
+				}
+
+				Closeables.close(connection);
+			}
+
+			return DriverManager.getConnection(url, username, password);
+
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Takes the connection back. An open transaction is rolled back, the
+	 * connection is closed if it cannot be reset or the pool is closed.
+	 *
+	 * @param connection
+	 */
+	void release(Connection connection) {
+		Check.notNull(connection);
+
+		try {
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+
+			synchronized (idle) {
+				if (closed) {
+					Closeables.close(connection);
+				} else {
+					idle.push(connection);
+				}
+			}
+
+		} catch (SQLException e) {
+			Closeables.close(connection);
+
+		} finally {
+			permits.release();
+		}
+	}
+
+	void close() {
+		synchronized (idle) {
+			closed = true;
+		}
+
+		Connection connection;
+		while ((connection = poll()) != null) {
+			Closeables.close(connection);
+		}
+	}
+
+	private Connection poll() {
+		synchronized (idle) {
+			return idle.poll();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The statements that build the indexes and constraints that were dropped
+ * before a load. The build runs in stages, the scripts of a stage do not
+ * depend on each other and may run in parallel, a stage starts after the
+ * previous one is done.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public class DeferredBuild {
+
+	private final List<List<String>> stages = new ArrayList<>();
+
+	/**
+	 * @param scripts the scripts of the next stage, empty stages are skipped
+	 */
+	void addStage(List<String> scripts) {
+		Check.noneNull(scripts);
+
+		if (!scripts.isEmpty()) {
+			stages.add(Collections.unmodifiableList(new ArrayList<>(scripts)));
+		}
+	}
+
+	public List<List<String>> getStages() {
+		return Collections.unmodifiableList(stages);
+	}
+
+	public int countScripts() {
+		return stages.stream().mapToInt(List::size).sum();
+	}
+
+	public boolean isEmpty() {
+		return stages.isEmpty();
+	}
+}
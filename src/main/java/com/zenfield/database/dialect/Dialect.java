@@ -21,8 +21,11 @@
  */
 package com.zenfield.database.dialect;
 
+import com.zenfield.core.Feed;
+import com.zenfield.core.SqlLexer;
 import com.zenfield.database.configuration.Environment;
 import java.io.File;
+import java.io.OutputStream;
 import java.util.List;
 
 /**
@@ -33,16 +36,255 @@ public interface Dialect {
 
 	String getName();
 
+	/**
+	 * @return the syntax of the scripts of the dialect
+	 */
+	SqlLexer.Syntax getSyntax();
+
 	List<String> listTables(Environment environment);
 
+	List<TableInfo> describeTables(Environment environment);
+
 	int countRows(Environment environment, String table);
 
 	boolean clear(Environment environment);
 
+	/**
+	 * Records in a metadata table of the database that it was created by the
+	 * script of the fingerprint, together with a hash of the resulting schema.
+	 *
+	 * @param environment
+	 * @param fingerprint the hash of the create script
+	 * @return success
+	 */
+	boolean saveFingerprint(Environment environment, String fingerprint);
+
+	/**
+	 * Empties every table instead of clearing the database, if the recorded
+	 * fingerprint matches and the schema did not change since it was
+	 * recorded. The sequences and the auto increments are reset as well.
+	 *
+	 * @param environment
+	 * @param fingerprint the hash of the create script
+	 * @param jobs the number of tables emptied in parallel, if the dialect
+	 * can do it
+	 * @return true if the tables were emptied, false if the database must be
+	 * cleared and created instead
+	 */
+	boolean truncate(Environment environment, String fingerprint, int jobs);
+
+	/**
+	 * Updates the statistics of the planner for the table.
+	 *
+	 * @param session
+	 * @param table
+	 * @return success
+	 */
+	boolean analyze(Session session, String table);
+
+	/**
+	 * Reads the table into the cache of the server.
+	 *
+	 * @param session
+	 * @param table
+	 * @return success
+	 */
+	boolean prewarm(Session session, String table);
+
 	boolean execute(Environment environment, File script);
 
+	boolean execute(Environment environment, Feed script);
+
+	/**
+	 * Wraps a script that loads data into the bulk load profile of the
+	 * environment. The settings of the profile are applied to the session at
+	 * the start of the script and restored at its end. Without a profile the
+	 * script is returned as it is.
+	 *
+	 * @param environment
+	 * @param script
+	 * @return the wrapped script
+	 */
+	Feed bulkLoad(Environment environment, Feed script);
+
+	/**
+	 * Prepares the existing tables for a bulk load, e.g. switches them to
+	 * unlogged tables if the profile of the environment asks for it.
+	 *
+	 * @param environment
+	 * @return success
+	 */
+	boolean beginBulkLoad(Environment environment);
+
+	/**
+	 * Reverts the changes of {@link #beginBulkLoad(Environment)}.
+	 *
+	 * @param environment
+	 * @return success
+	 */
+	boolean endBulkLoad(Environment environment);
+
 	boolean dump(Environment environment, File file);
 
+	boolean dump(Environment environment, OutputStream output);
+
 	boolean dump(Environment environment, String table, File file);
 
+	/**
+	 * Dumps a range of the rows of a table in the same format as
+	 * {@link #dump(Environment, String, File)}.
+	 *
+	 * @param environment
+	 * @param table
+	 * @param range the range of the rows, or null for every row
+	 * @param file
+	 * @return success
+	 */
+	boolean dump(Environment environment, String table, Range range, File file);
+
+	/**
+	 * Splits a table into ranges of its primary key based on the statistics
+	 * of the database. Tables without a single integer primary key are not
+	 * split.
+	 *
+	 * @param environment
+	 * @param table
+	 * @param chunks the number of ranges wanted
+	 * @return the ranges in ascending order, or null on error
+	 */
+	List<Range> split(Environment environment, String table, int chunks);
+
+	/**
+	 * Opens a session that keeps a consistent view of the database for
+	 * several dump processes until it is closed.
+	 *
+	 * @param environment
+	 * @param workers the number of dumps reading the snapshot at the same
+	 * time
+	 * @return the snapshot, or null on error
+	 */
+	Snapshot openSnapshot(Environment environment, int workers);
+
+	/**
+	 * Dumps a section of the schema.
+	 *
+	 * @param environment
+	 * @param section
+	 * @param snapshot the snapshot to read from, or null
+	 * @param output
+	 * @return success
+	 */
+	boolean dump(Environment environment, Section section, Snapshot snapshot, OutputStream output);
+
+	/**
+	 * Dumps the data of a table so that it can be loaded in parallel with
+	 * other tables, after the {@link Section#PRE_DATA} and before the
+	 * {@link Section#POST_DATA} section.
+	 *
+	 * @param environment
+	 * @param table
+	 * @param range the range of the rows, or null for every row
+	 * @param snapshot the snapshot to read from, or null
+	 * @param output
+	 * @return success
+	 */
+	boolean dump(Environment environment, String table, Range range, Snapshot snapshot, OutputStream output);
+
+	/**
+	 * @param environment
+	 * @return true if whole databases are dumped into directory archives
+	 */
+	boolean isArchiveSupported(Environment environment);
+
+	/**
+	 * @param directory
+	 * @return true if the directory is an archive of this dialect
+	 */
+	boolean isArchive(File directory);
+
+	/**
+	 * Dumps the database into a directory archive using parallel jobs. The
+	 * directory must not exist.
+	 *
+	 * @param environment
+	 * @param directory
+	 * @param jobs
+	 * @return success
+	 */
+	boolean dumpArchive(Environment environment, File directory, int jobs);
+
+	/**
+	 * Restores a directory archive into the cleared database using parallel
+	 * jobs.
+	 *
+	 * @param environment
+	 * @param directory
+	 * @param jobs
+	 * @return success
+	 */
+	boolean restoreArchive(Environment environment, File directory, int jobs);
+
+	/**
+	 * Saves a copy of the database on the server under a name, replacing an
+	 * earlier copy of the same name. Unlike a {@link Snapshot} the copy is
+	 * kept until it is dropped.
+	 *
+	 * @param environment
+	 * @param name letters, digits and underscores
+	 * @return success
+	 */
+	boolean saveSnapshot(Environment environment, String name);
+
+	/**
+	 * Replaces the database with a copy saved by
+	 * {@link #saveSnapshot(Environment, String)}. The copy is kept.
+	 *
+	 * @param environment
+	 * @param name
+	 * @return success
+	 */
+	boolean restoreSnapshot(Environment environment, String name);
+
+	/**
+	 * @param environment
+	 * @return the names of the saved copies of the database, or null on error
+	 */
+	List<String> listSnapshots(Environment environment);
+
+	/**
+	 * @param environment
+	 * @param name
+	 * @return the size of the saved copy in bytes, or -1 on error
+	 */
+	long sizeOfSnapshot(Environment environment, String name);
+
+	/**
+	 * @param environment
+	 * @param name
+	 * @return success, also if the copy does not exist
+	 */
+	boolean dropSnapshot(Environment environment, String name);
+
+	/**
+	 * Drops the secondary indexes and the foreign key constraints of the
+	 * tables, so that data is loaded without maintaining them. The primary
+	 * keys are kept.
+	 *
+	 * @param environment
+	 * @param unique true to drop the unique constraints and indexes as well;
+	 * only if the loaded data is known to be unique, the scripts relying on
+	 * them, e.g. by ON CONFLICT or INSERT IGNORE, would behave differently
+	 * @return the statements that build them again, or null on error
+	 */
+	DeferredBuild deferIndexes(Environment environment, boolean unique);
+
+	/**
+	 * Opens a client session that executes scripts and queries on one
+	 * connection until it is closed.
+	 *
+	 * @param environment
+	 * @return the session, or null on error
+	 */
+	Session openSession(Environment environment);
+
 }
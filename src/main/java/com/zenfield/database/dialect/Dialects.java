@@ -21,6 +21,7 @@
  */
 package com.zenfield.database.dialect;
 
+import com.zenfield.core.Check;
 import com.zenfield.core.Strings;
 
 /**
@@ -33,18 +34,24 @@ public final class Dialects {
 	}
 
 	public static Dialect of(String value) {
+		return of(value, Backend.CLIENT);
+	}
+
+	public static Dialect of(String value, Backend backend) {
+		Check.notNull(backend);
+
 		if (Strings.isEmpty(value)) {
 			return null;
 		}
 
 		if ("mysql".equalsIgnoreCase(value)) {
-			return new MysqlDialect();
+			return backend == Backend.JDBC ? new JdbcMysqlDialect() : new MysqlDialect(backend);
 		}
 
 		if ("postgres".equalsIgnoreCase(value)
 				|| "postgresql".equalsIgnoreCase(value)
 				|| "psql".equalsIgnoreCase(value)) {
-			return new PostgresDialect();
+			return backend == Backend.JDBC ? new JdbcPostgresDialect() : new PostgresDialect(backend);
 		}
 
 		return null;
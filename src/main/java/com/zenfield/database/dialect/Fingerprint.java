@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Digest;
+import com.zenfield.core.Feed;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The fingerprint of a database created by a create script: the hash of the
+ * script and of the schema it created. It is kept in a table of the database
+ * which is left out of the description of the schema, the listed tables and
+ * the dumps, and is not emptied.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+final class Fingerprint {
+
+	static final String TABLE = "db_fingerprint";
+	static final String QUERY_LOAD = "SELECT fingerprint FROM " + TABLE;
+	private static final String SAVE = "CREATE TABLE IF NOT EXISTS " + TABLE + " (fingerprint char(64) NOT NULL);\n"
+			+ "DELETE FROM " + TABLE + ";\n"
+			+ "INSERT INTO " + TABLE + " VALUES ('{fingerprint}');\n";
+
+	private Fingerprint() {
+	}
+
+	/**
+	 * @param script the hash of the create script
+	 * @param schema the lines describing the schema in any order
+	 * @return the fingerprint
+	 */
+	static String of(String script, List<String> schema) {
+		Check.notEmpty(script);
+		Check.noneNull(schema);
+
+		List<String> sorted = new ArrayList<>(schema);
+		Collections.sort(sorted);
+
+		Digest digest = Digest.sha256().update(script);
+		sorted.forEach(digest::update);
+		return digest.toHex();
+	}
+
+	/**
+	 * @param fingerprint
+	 * @return the script that replaces the stored fingerprint
+	 */
+	static Feed save(String fingerprint) {
+		Check.notEmpty(fingerprint);
+		return Feed.of(SAVE.replace("{fingerprint}", fingerprint));
+	}
+}
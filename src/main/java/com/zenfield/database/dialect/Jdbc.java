@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Closeables;
+import com.zenfield.database.configuration.Environment;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The JDBC connections of a dialect, one pool per environment. Remote
+ * databases are reached through a port forwarded by ssh.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+final class Jdbc {
+
+	private static final int POOL_SIZE = 8;
+
+	@FunctionalInterface
+	interface Work<T> {
+
+		T run(Connection connection) throws SQLException, IOException;
+	}
+
+	private final String scheme;
+	private final int port;
+	private final int fetchSize;
+	private final Map<String, ConnectionPool> pools = new HashMap<>();
+
+	/**
+	 * @param scheme the beginning of the URL before the host
+	 * @param port the default port of the database server
+	 * @param fetchSize the fetch size that streams the result sets of the
+	 * driver
+	 */
+	Jdbc(String scheme, int port, int fetchSize) {
+		Check.notEmpty(scheme);
+		Check.positive(port);
+
+		this.scheme = scheme;
+		this.port = port;
+		this.fetchSize = fetchSize;
+
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+	}
+
+	<T> T run(Environment environment, Work<T> work) throws SQLException, IOException {
+		Check.notNull(environment);
+		Check.notNull(work);
+
+		ConnectionPool pool = pool(environment);
+		Connection connection = pool.acquire();
+
+		try {
+			return work.run(connection);
+
+		} finally {
+			pool.release(connection);
+		}
+	}
+
+	/**
+	 * Streams the rows of the query, the values are read as strings.
+	 *
+	 * @param environment
+	 * @param query
+	 * @param rows
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	void query(Environment environment, String query, Consumer<String[]> rows) throws SQLException, IOException {
+		Check.notNull(environment);
+		Check.notEmpty(query);
+		Check.notNull(rows);
+
+		run(environment, connection -> {
+			// the cursor of the driver is used only in a transaction
+			connection.setAutoCommit(false);
+
+			Statement statement = null;
+			ResultSet resultSet = null;
+
+			try {
+				statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				statement.setFetchSize(fetchSize);
+				resultSet = statement.executeQuery(query);
+
+				int columns = resultSet.getMetaData().getColumnCount();
+				while (resultSet.next()) {
+					String[] row = new String[columns];
+					for (int i = 0; i < columns; i++) {
+						row[i] = resultSet.getString(i + 1);
+					}
+
+					rows.accept(row);
+				}
+
+				return null;
+
+			} finally {
+				Closeables.close(resultSet);
+				Closeables.close(statement);
+			}
+		});
+	}
+
+	/**
+	 * Executes the statements in one batch.
+	 *
+	 * @param environment
+	 * @param statements
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	void execute(Environment environment, String... statements) throws SQLException, IOException {
+		Check.notNull(environment);
+		Check.noneNull(statements);
+
+		run(environment, connection -> {
+			Statement statement = null;
+
+			try {
+				statement = connection.createStatement();
+				for (String sql : statements) {
+					statement.addBatch(sql);
+				}
+
+				statement.executeBatch();
+				return null;
+
+			} finally {
+				Closeables.close(statement);
+			}
+		});
+	}
+
+	/**
+	 * Closes the connections of the environment, e.g. after its database was
+	 * dropped, the next work opens new ones. The connections in use are
+	 * closed when they are released.
+	 *
+	 * @param environment
+	 */
+	synchronized void reset(Environment environment) {
+		Check.notNull(environment);
+
+		ConnectionPool pool = pools.remove(environment.getName());
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	private synchronized ConnectionPool pool(Environment environment) throws IOException {
+		Check.notNull(environment);
+
+		ConnectionPool pool = pools.get(environment.getName());
+		if (pool != null) {
+			return pool;
+		}
+
+		String hostname = environment.getHostname();
+		int serverPort = port;
+
+		if (environment.isSsh()) {
+			Integer local = Ssh.forward(environment, hostname, port);
+			if (local == null) {
+				throw new IOException("Cannot reach the database of " + environment.getName() + " through ssh");
+			}
+
+			hostname = Ssh.LOOPBACK;
+			serverPort = local;
+		}
+
+		String url = scheme + hostname + ":" + serverPort + "/" + environment.getDatabase();
+		pool = new ConnectionPool(url, environment.getUsername(), environment.getPassword(), POOL_SIZE);
+		pools.put(environment.getName(), pool);
+		return pool;
+	}
+
+	private synchronized void close() {
+		pools.values().forEach(ConnectionPool::close);
+		pools.clear();
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Exceptions;
+import com.zenfield.core.Strings;
+import com.zenfield.database.configuration.Environment;
+import com.zenfield.database.configuration.ReadOnly;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the catalog queries through JDBC. The scripts and the dumps still use
+ * mysql and mysqldump.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public class JdbcMysqlDialect extends MysqlDialect {
+
+	private static final int PORT = 3306;
+
+	// the driver streams the rows one by one only with this fetch size
+	private static final int FETCH_SIZE = Integer.MIN_VALUE;
+
+	private final Jdbc jdbc = new Jdbc("jdbc:mysql://", PORT, FETCH_SIZE);
+
+	public JdbcMysqlDialect() {
+		super(Backend.JDBC);
+	}
+
+	@Override
+	public List<String> listTables(Environment environment) {
+		Check.notNull(environment);
+
+		try {
+			List<String> tables = new ArrayList<>();
+			jdbc.query(environment, QUERY_LIST_TABLES, row -> tables.add(row[0]));
+			return tables;
+
+		} catch (SQLException | IOException e) {
+			System.err.println("Cannot retrieve the tables");
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	@Override
+	public List<TableInfo> describeTables(Environment environment) {
+		Check.notNull(environment);
+
+		try {
+			List<TableInfo> tables = new ArrayList<>();
+			jdbc.query(environment, QUERY_DESCRIBE_TABLES, row -> tables.add(new TableInfo(row[0], Strings.toLong(row[1], -1), Strings.toLong(row[2], 0))));
+			return Collections.unmodifiableList(tables);
+
+		} catch (SQLException | IOException e) {
+			System.err.println("Cannot describe the tables");
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	@Override
+	public int countRows(Environment environment, String table) {
+		Check.notNull(environment);
+		Check.notEmpty(table);
+
+		try {
+			List<String> result = new ArrayList<>();
+			jdbc.query(environment, "SELECT COUNT(*) FROM " + table, row -> result.add(row[0]));
+			return result.isEmpty() ? -1 : Integer.parseInt(result.get(0));
+
+		} catch (NumberFormatException e) {
+			return -1;
+
+		} catch (SQLException | IOException e) {
+			System.err.println("Cannot count rows");
+			Exceptions.print(e, System.err);
+			return -1;
+		}
+	}
+
+	@Override
+	public boolean clear(Environment environment) {
+		Check.notNull(environment);
+
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot clear the database: read-only environment");
+			return false;
+		}
+
+		String database = environment.getDatabase();
+
+		try {
+			jdbc.execute(environment, "DROP DATABASE " + database, "CREATE DATABASE " + database);
+			return true;
+
+		} catch (SQLException | IOException e) {
+			System.err.println("Cannot clear the database");
+			Exceptions.print(e, System.err);
+			return false;
+
+		} finally {
+			// the other connections of the pool lost their current database
+			// with the dropped one
+			jdbc.reset(environment);
+		}
+	}
+
+	@Override
+	protected List<String> query(Environment environment, String query) {
+		Check.notNull(environment);
+		Check.notEmpty(query);
+
+		try {
+			List<String> result = new ArrayList<>();
+			jdbc.query(environment, query, row -> result.add(Arrays.stream(row)
+					.map(value -> value == null ? "NULL" : value)
+					.collect(Collectors.joining("\t"))));
+			return result;
+
+		} catch (SQLException | IOException e) {
+			System.err.println("Cannot execute the query");
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Exceptions;
+import com.zenfield.core.Strings;
+import com.zenfield.database.configuration.Environment;
+import com.zenfield.database.configuration.ReadOnly;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+
+/**
+ * Runs the catalog queries and copies the table data through JDBC. The scripts
+ * and the schema dumps still use psql and pg_dump.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public class JdbcPostgresDialect extends PostgresDialect {
+
+	private static final int PORT = 5432;
+	private static final int FETCH_SIZE = 1000;
+
+	private final Jdbc jdbc = new Jdbc("jdbc:postgresql://", PORT, FETCH_SIZE);
+
+	public JdbcPostgresDialect() {
+		super(Backend.JDBC);
+	}
+
+	@Override
+	public List<String> listTables(Environment environment) {
+		Check.notNull(environment);
+
+		try {
+			List<String> tables = new ArrayList<>();
+			jdbc.query(environment, QUERY_LIST_TABLES, row -> tables.add(row[0]));
+			return tables;
+
+		} catch (SQLException | IOException e) {
+			System.err.println("Cannot retrieve the tables");
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	@Override
+	public List<TableInfo> describeTables(Environment environment) {
+		Check.notNull(environment);
+
+		try {
+			List<TableInfo> tables = new ArrayList<>();
+			jdbc.query(environment, QUERY_DESCRIBE_TABLES, row -> tables.add(new TableInfo(row[0], Strings.toLong(row[1], -1), Strings.toLong(row[2], 0))));
+			return tables;
+
+		} catch (SQLException | IOException e) {
+			System.err.println("Cannot describe the tables");
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	@Override
+	public int countRows(Environment environment, String table) {
+		Check.notNull(environment);
+		Check.notEmpty(table);
+
+		try {
+			List<String> result = new ArrayList<>();
+			jdbc.query(environment, "SELECT COUNT(*) FROM " + table, row -> result.add(row[0]));
+			return result.isEmpty() ? -1 : Integer.parseInt(result.get(0));
+
+		} catch (NumberFormatException e) {
+			return -1;
+
+		} catch (SQLException | IOException e) {
+			System.err.println("Cannot count rows");
+			Exceptions.print(e, System.err);
+			return -1;
+		}
+	}
+
+	@Override
+	public boolean clear(Environment environment) {
+		Check.notNull(environment);
+
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot clear the database: read-only environment");
+			return false;
+		}
+
+		try {
+			jdbc.execute(environment, "DROP SCHEMA public CASCADE", "CREATE SCHEMA public");
+			return true;
+
+		} catch (SQLException | IOException e) {
+			System.err.println("Cannot clear the database");
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	@Override
+	protected List<String> query(Environment environment, String query) {
+		Check.notNull(environment);
+		Check.notEmpty(query);
+
+		try {
+			List<String> result = new ArrayList<>();
+			jdbc.query(environment, query, row -> result.add(String.join("|", row)));
+			return result;
+
+		} catch (SQLException | IOException e) {
+			System.err.println("Cannot execute the query");
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	/**
+	 * Streams the rows of the range with the COPY API of the driver, in the
+	 * snapshot if there is one.
+	 */
+	@Override
+	protected boolean copy(Environment environment, String table, Range range, Snapshot snapshot, OutputStream output) {
+		Check.notNull(environment);
+		Check.notEmpty(table);
+		Check.notNull(range);
+		// snapshot
+		Check.notNull(output);
+
+		try {
+			return jdbc.run(environment, connection -> {
+				if (snapshot != null) {
+					connection.setAutoCommit(false);
+
+					try (Statement statement = connection.createStatement()) {
+						statement.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ READ ONLY");
+						statement.execute("SET TRANSACTION SNAPSHOT '" + snapshot.getId() + "'");
+					}
+				}
+
+				output.write(("COPY public." + table + " FROM stdin;\n").getBytes(StandardCharsets.UTF_8));
+
+				CopyManager copy = new CopyManager(connection.unwrap(BaseConnection.class));
+				copy.copyOut("COPY (SELECT * FROM public." + table + " WHERE " + range.getCondition() + ") TO STDOUT", output);
+
+				output.write("\\.\n".getBytes(StandardCharsets.UTF_8));
+				return true;
+			});
+
+		} catch (SQLException | IOException e) {
+			System.err.println("Cannot dump the table " + table + " " + range);
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+}
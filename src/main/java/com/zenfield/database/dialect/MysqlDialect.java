@@ -22,20 +22,38 @@
 package com.zenfield.database.dialect;
 
 import com.zenfield.core.Check;
+import com.zenfield.core.Closeables;
 import com.zenfield.core.Exceptions;
-import com.zenfield.core.Files;
+import com.zenfield.core.Feed;
+import com.zenfield.core.LineFilter;
 import com.zenfield.core.Lists;
+import com.zenfield.core.Parallel;
 import com.zenfield.core.Processes;
+import com.zenfield.core.SqlLexer;
 import com.zenfield.core.Strings;
+import com.zenfield.core.UnhandledCaseException;
+import com.zenfield.database.configuration.BulkLoad;
 import com.zenfield.database.configuration.Environment;
 import com.zenfield.database.configuration.ReadOnly;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  *
@@ -44,19 +62,91 @@ import java.util.regex.Pattern;
 public class MysqlDialect implements Dialect {
 
 	private static final String QUERY_CLEAR = "DROP DATABASE {name}; CREATE DATABASE {name};";
-	private static final String DEFINER_START = "/*!50013 DEFINER=";
+	private static final String QUERY_HAS_FINGERPRINT = "SELECT COUNT(*) FROM information_schema.TABLES"
+			+ " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = '" + Fingerprint.TABLE + "'";
+	private static final String QUERY_DESCRIBE_SCHEMA = "SELECT CONCAT_WS(' ', 'column', TABLE_NAME, COLUMN_NAME, COLUMN_TYPE, IS_NULLABLE, COLUMN_DEFAULT, EXTRA)"
+			+ " FROM information_schema.COLUMNS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME <> '" + Fingerprint.TABLE + "'"
+			+ " UNION ALL SELECT CONCAT_WS(' ', 'index', TABLE_NAME, INDEX_NAME, NON_UNIQUE, INDEX_TYPE, SEQ_IN_INDEX, COLUMN_NAME, SUB_PART)"
+			+ " FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME <> '" + Fingerprint.TABLE + "'"
+			+ " UNION ALL SELECT CONCAT_WS(' ', 'key', TABLE_NAME, CONSTRAINT_NAME, COLUMN_NAME, REFERENCED_TABLE_NAME, REFERENCED_COLUMN_NAME)"
+			+ " FROM information_schema.KEY_COLUMN_USAGE WHERE TABLE_SCHEMA = DATABASE()"
+			+ " UNION ALL SELECT CONCAT_WS(' ', 'view', TABLE_NAME, MD5(VIEW_DEFINITION))"
+			+ " FROM information_schema.VIEWS WHERE TABLE_SCHEMA = DATABASE()"
+			+ " UNION ALL SELECT CONCAT_WS(' ', 'routine', ROUTINE_TYPE, ROUTINE_NAME, MD5(ROUTINE_DEFINITION))"
+			+ " FROM information_schema.ROUTINES WHERE ROUTINE_SCHEMA = DATABASE()"
+			+ " UNION ALL SELECT CONCAT_WS(' ', 'trigger', EVENT_OBJECT_TABLE, TRIGGER_NAME, MD5(ACTION_STATEMENT))"
+			+ " FROM information_schema.TRIGGERS WHERE TRIGGER_SCHEMA = DATABASE()";
+	// the fingerprint table is metadata of the tool, it is not listed nor
+	// dumped like the tables of the schema
+	static final String QUERY_LIST_TABLES = "SELECT TABLE_NAME FROM information_schema.TABLES"
+			+ " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME <> '" + Fingerprint.TABLE + "' ORDER BY TABLE_NAME";
+	static final String QUERY_DESCRIBE_TABLES = "SELECT TABLE_NAME, TABLE_ROWS, DATA_LENGTH + INDEX_LENGTH"
+			+ " FROM information_schema.TABLES"
+			+ " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_TYPE = 'BASE TABLE' AND TABLE_NAME <> '" + Fingerprint.TABLE + "'";
+	private static final String QUERY_PRIMARY_KEY = "SELECT COLUMN_NAME, DATA_TYPE"
+			+ " FROM information_schema.COLUMNS"
+			+ " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = '{table}' AND COLUMN_KEY = 'PRI'";
+	private static final String QUERY_NON_TRANSACTIONAL_TABLES = "SELECT TABLE_NAME, ENGINE"
+			+ " FROM information_schema.TABLES"
+			+ " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_TYPE = 'BASE TABLE' AND ENGINE <> 'InnoDB'";
+	private static final Set<String> INTEGER_TYPES = new HashSet<>(Arrays.asList("tinyint", "smallint", "mediumint", "int", "bigint"));
+	private static final LineFilter DEFINER_FILTER = LineFilter.skipPrefix("/*!50013 DEFINER=");
+	private static final String SCRIPT_START = "SET autocommit=0;\n";
+	private static final String SCRIPT_END = "\nCOMMIT;\n";
+	private static final String QUERY_DEFERRED_INDEXES = "SELECT TABLE_NAME, INDEX_NAME, NON_UNIQUE, INDEX_TYPE, COLUMN_NAME, SUB_PART, COLLATION"
+			+ " FROM information_schema.STATISTICS"
+			+ " WHERE TABLE_SCHEMA = DATABASE() AND INDEX_NAME <> 'PRIMARY'"
+			+ " ORDER BY TABLE_NAME, INDEX_NAME, SEQ_IN_INDEX";
+	private static final String QUERY_DEFERRED_FOREIGN_KEYS = "SELECT k.TABLE_NAME, k.CONSTRAINT_NAME, k.COLUMN_NAME,"
+			+ " k.REFERENCED_TABLE_NAME, k.REFERENCED_COLUMN_NAME, r.DELETE_RULE, r.UPDATE_RULE"
+			+ " FROM information_schema.KEY_COLUMN_USAGE k JOIN information_schema.REFERENTIAL_CONSTRAINTS r"
+			+ " ON r.CONSTRAINT_SCHEMA = k.CONSTRAINT_SCHEMA AND r.TABLE_NAME = k.TABLE_NAME AND r.CONSTRAINT_NAME = k.CONSTRAINT_NAME"
+			+ " WHERE k.TABLE_SCHEMA = DATABASE() AND k.REFERENCED_TABLE_SCHEMA = DATABASE()"
+			+ " ORDER BY k.TABLE_NAME, k.CONSTRAINT_NAME, k.ORDINAL_POSITION";
+	private static final String NULL = "NULL";
+	private static final String SNAPSHOT_INFIX = "_snapshot_";
+	private static final String RESTORING_SUFFIX = "_restoring";
+	private static final String REPLACED_SUFFIX = "_replaced";
+	private static final int MAX_IDENTIFIER_LENGTH = 64;
+	static final String DISABLE_FOREIGN_KEY_CHECKS = "SET @db_foreign_key_checks=@@foreign_key_checks, foreign_key_checks=0;\n";
+	static final String RESTORE_FOREIGN_KEY_CHECKS = "SET foreign_key_checks=@db_foreign_key_checks;\n";
+	// sql_log_bin cannot be changed in a transaction, the data is committed
+	// before the settings are restored
+	private static final String BULK_LOAD_START = "SET @db_foreign_key_checks=@@foreign_key_checks, @db_unique_checks=@@unique_checks, @db_sql_log_bin=@@sql_log_bin;\n"
+			+ "SET foreign_key_checks=0, unique_checks=0, sql_log_bin=0;\n";
+	private static final String BULK_LOAD_END = "\nDELIMITER ;\nCOMMIT;\n"
+			+ "SET foreign_key_checks=@db_foreign_key_checks, unique_checks=@db_unique_checks, sql_log_bin=@db_sql_log_bin;\n";
+	private static final String ARCHIVE_METADATA = "metadata";
+	private static final int ARCHIVE_CHUNK_ROWS = 100000;
+
+	private final Backend backend;
+	private final Map<String, Boolean> archiveTools = new ConcurrentHashMap<>();
+
+	public MysqlDialect() {
+		this(Backend.CLIENT);
+	}
+
+	public MysqlDialect(Backend backend) {
+		Check.notNull(backend);
+		this.backend = backend;
+	}
 
 	@Override
 	public String getName() {
 		return "MySQL";
 	}
 
+	@Override
+	public SqlLexer.Syntax getSyntax() {
+		return SqlLexer.Syntax.MYSQL;
+	}
+
 	@Override
 	public List<String> listTables(Environment environment) {
 		Check.notNull(environment);
 
 		try {
-			ProcessBuilder builder = createQueryBuilder(environment, "show tables");
+			ProcessBuilder builder = createQueryBuilder(environment, QUERY_LIST_TABLES);
 			List<String> result = new ArrayList<>();
 			Integer exitCode = Processes.execute(builder, result);
 
@@ -78,6 +168,43 @@ public class MysqlDialect implements Dialect {
 		}
 	}
 
+	@Override
+	public List<TableInfo> describeTables(Environment environment) {
+		Check.notNull(environment);
+
+		try {
+			ProcessBuilder builder = createQueryBuilder(environment, QUERY_DESCRIBE_TABLES);
+			List<String> result = new ArrayList<>();
+			Integer exitCode = Processes.execute(builder, result);
+
+			if (exitCode == null) {
+				System.err.println("Cannot describe the tables: null exit code");
+				return null;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot describe the tables: exit code was " + exitCode);
+				return null;
+			}
+
+			List<TableInfo> tables = new ArrayList<>();
+			for (String line : result) {
+				String[] columns = line.split("\t");
+				if (columns.length != 3 || Strings.isEmpty(columns[0])) {
+					continue;
+				}
+
+				tables.add(new TableInfo(columns[0], Strings.toLong(columns[1], -1), Strings.toLong(columns[2], 0)));
+			}
+
+			return Collections.unmodifiableList(tables);
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
 	@Override
 	public int countRows(Environment environment, String table) {
 		Check.notNull(environment);
@@ -161,6 +288,104 @@ public class MysqlDialect implements Dialect {
 		}
 	}
 
+	@Override
+	public boolean saveFingerprint(Environment environment, String fingerprint) {
+		Check.notNull(environment);
+		Check.notEmpty(fingerprint);
+
+		Session session = openSession(environment);
+		if (session == null) {
+			return false;
+		}
+
+		try {
+			List<String> schema = session.query(QUERY_DESCRIBE_SCHEMA);
+			return schema != null && session.execute(Fingerprint.save(Fingerprint.of(fingerprint, schema)));
+
+		} finally {
+			session.close();
+		}
+	}
+
+	@Override
+	public boolean truncate(Environment environment, String fingerprint, int jobs) {
+		Check.notNull(environment);
+		Check.notEmpty(fingerprint);
+		Check.positive(jobs);
+
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			return false;
+		}
+
+		List<String> tables;
+
+		Session session = openSession(environment);
+		if (session == null) {
+			return false;
+		}
+
+		try {
+			List<String> exists = session.query(QUERY_HAS_FINGERPRINT);
+			if (exists == null || !exists.contains("1")) {
+				return false;
+			}
+
+			List<String> stored = session.query(Fingerprint.QUERY_LOAD);
+			List<String> schema = stored == null ? null : session.query(QUERY_DESCRIBE_SCHEMA);
+			if (schema == null || !stored.contains(Fingerprint.of(fingerprint, schema))) {
+				return false;
+			}
+
+			tables = listBaseTables(session, environment.getDatabase());
+			if (tables == null) {
+				return false;
+			}
+
+		} finally {
+			session.close();
+		}
+
+		tables.remove(Fingerprint.TABLE);
+
+		// a TRUNCATE recreates the table, so the tables are shared among
+		// parallel sessions
+		List<List<String>> groups = new ArrayList<>();
+		for (int i = 0; i < tables.size(); i++) {
+			if (i < jobs) {
+				groups.add(new ArrayList<>());
+			}
+
+			groups.get(i % jobs).add(tables.get(i));
+		}
+
+		List<Callable<Boolean>> tasks = groups.stream()
+				.map(group -> (Callable<Boolean>) () -> truncate(environment, group))
+				.collect(Collectors.toList());
+
+		return Parallel.run(jobs, tasks);
+	}
+
+	private boolean truncate(Environment environment, List<String> tables) {
+		Check.notNull(environment);
+		Check.noneNull(tables);
+
+		StringBuilder script = new StringBuilder(DISABLE_FOREIGN_KEY_CHECKS);
+		tables.forEach(table -> script.append("TRUNCATE TABLE ").append(quote(table)).append(";\n"));
+		script.append(RESTORE_FOREIGN_KEY_CHECKS);
+
+		Session session = openSession(environment);
+		if (session == null) {
+			return false;
+		}
+
+		try {
+			return session.execute(Feed.of(script.toString()));
+
+		} finally {
+			session.close();
+		}
+	}
+
 	@Override
 	public boolean execute(Environment environment, File script) {
 		Check.notNull(environment);
@@ -181,37 +406,24 @@ public class MysqlDialect implements Dialect {
 			return false;
 		}
 
-		File tmp = null;
-
-		try {
-			tmp = File.createTempFile("db-", ".sql");
-			Files.write("SET autocommit=0;", tmp);
-			Files.copy(script, tmp, true);
-			Files.append("COMMIT;", tmp);
+		return execute(environment, Feed.of(script));
+	}
 
-			ProcessBuilder builder;
-			if (environment.isSsh()) {
-				builder = new ProcessBuilder(
-						"ssh", "-C", environment.getSshUsernameHostname(),
-						"mysql",
-						"--host", environment.getHostname(),
-						"--user", environment.getUsername(),
-						"--password=" + environment.getPassword(),
-						environment.getDatabase());
+	@Override
+	public boolean execute(Environment environment, Feed script) {
+		Check.notNull(environment);
+		Check.notNull(script);
 
-			} else {
-				builder = new ProcessBuilder(
-						"mysql",
-						"--host", environment.getHostname(),
-						"--user", environment.getUsername(),
-						"--password=" + environment.getPassword(),
-						environment.getDatabase());
-			}
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot execute: read-only environment");
+			return false;
+		}
 
-			builder.redirectInput(tmp);
+		try {
+			ProcessBuilder builder = createClientBuilder(environment);
 
 			List<String> result = new ArrayList<>();
-			Integer exitCode = Processes.execute(builder, result);
+			Integer exitCode = Processes.execute(builder, Feed.concat(Feed.of(SCRIPT_START), script, Feed.of(SCRIPT_END)), result);
 
 			if (exitCode == null) {
 				System.err.println("Cannot execute: null exit code");
@@ -232,170 +444,1170 @@ public class MysqlDialect implements Dialect {
 		} catch (IOException e) {
 			Exceptions.print(e, System.err);
 			return false;
+		}
+	}
+
+	/**
+	 * ANALYZE TABLE reports its errors as rows of the result: the table, the
+	 * operation, the type and the text of the message.
+	 */
+	@Override
+	public boolean analyze(Session session, String table) {
+		Check.notNull(session);
+		Check.notEmpty(table);
+
+		List<String> result = session.query("ANALYZE TABLE " + quote(table));
+		if (result == null) {
+			return false;
+		}
+
+		for (String line : result) {
+			String[] columns = line.split("\t", -1);
+			if (columns.length == 4 && "error".equalsIgnoreCase(columns[2].trim())) {
+				System.err.println("Cannot analyze " + table + ": " + columns[3].trim());
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * InnoDB keeps the rows in the primary key, a scan of it reads the whole
+	 * table into the buffer pool. The secondary indexes are not read. A table
+	 * without a primary key keeps its rows in a hidden index which cannot be
+	 * forced, it is counted as it is.
+	 */
+	@Override
+	public boolean prewarm(Session session, String table) {
+		Check.notNull(session);
+		Check.notEmpty(table);
+
+		List<String> keys = session.query(QUERY_PRIMARY_KEY.replace("{table}", escape(table)));
+		if (keys == null) {
+			return false;
+		}
+
+		return session.query("SELECT COUNT(*) FROM " + quote(table) + (keys.isEmpty() ? "" : " FORCE INDEX (PRIMARY)")) != null;
+	}
+
+	/**
+	 * The copy is a schema next to the database, its tables are created by
+	 * their SHOW CREATE TABLE statements and filled by INSERT ... SELECT on
+	 * the server. Views, routines and triggers are not copied.
+	 */
+	@Override
+	public boolean saveSnapshot(Environment environment, String name) {
+		Check.notNull(environment);
+		Check.notEmpty(name);
+
+		String snapshot = getSnapshotSchema(environment, name);
+		if (snapshot == null) {
+			return false;
+		}
+
+		Session session = openSession(environment);
+		if (session == null) {
+			return false;
+		}
+
+		try {
+			return copySchema(session, environment.getDatabase(), snapshot, environment.getDatabase());
 
 		} finally {
-			Files.delete(tmp);
+			session.close();
 		}
 	}
 
+	/**
+	 * The copy is copied again into a staging schema and swapped with the
+	 * tables of the database by one RENAME TABLE, so the database is never
+	 * seen half restored.
+	 */
 	@Override
-	public boolean dump(Environment environment, File file) {
+	public boolean restoreSnapshot(Environment environment, String name) {
 		Check.notNull(environment);
-		Check.notNull(file);
+		Check.notEmpty(name);
 
-		ProcessBuilder builder;
+		String snapshot = getSnapshotSchema(environment, name);
+		if (snapshot == null) {
+			return false;
+		}
 
-		if (environment.isSsh()) {
-			builder = new ProcessBuilder(
-					"ssh", "-C", environment.getSshUsernameHostname(),
-					"mysqldump",
-					"--host", environment.getHostname(),
-					"--user", environment.getUsername(),
-					"--password=" + environment.getPassword(),
-					environment.getDatabase());
+		List<String> snapshots = listSnapshots(environment);
+		if (snapshots == null) {
+			return false;
+		}
 
-		} else {
-			builder = new ProcessBuilder(
-					"mysqldump",
-					"--host", environment.getHostname(),
-					"--user", environment.getUsername(),
-					"--password=" + environment.getPassword(),
-					environment.getDatabase());
+		if (!snapshots.contains(name)) {
+			System.err.println("Snapshot not found: " + name);
+			return false;
 		}
 
-		try {
-			Integer exitCode = Processes.save(builder, line -> !line.startsWith(DEFINER_START), file);
+		String database = environment.getDatabase();
+		String restoring = database + RESTORING_SUFFIX;
+		String replaced = database + REPLACED_SUFFIX;
 
-			if (exitCode == null) {
-				System.err.println("Cannot dump the database: null exit code");
+		Session session = openSession(environment);
+		if (session == null) {
+			return false;
+		}
+
+		try {
+			if (!copySchema(session, snapshot, restoring, database)) {
 				return false;
 			}
 
-			if (exitCode != 0) {
-				System.err.println("Cannot dump the database: exit code was " + exitCode);
+			List<String> current = listBaseTables(session, database);
+			List<String> restored = listBaseTables(session, restoring);
+			if (current == null || restored == null) {
 				return false;
 			}
 
-			return true;
+			List<String> renames = new ArrayList<>();
+			current.forEach(table -> renames.add(quote(database) + "." + quote(table) + " TO " + quote(replaced) + "." + quote(table)));
+			restored.forEach(table -> renames.add(quote(restoring) + "." + quote(table) + " TO " + quote(database) + "." + quote(table)));
 
-		} catch (IOException e) {
-			Exceptions.print(e, System.err);
-			return false;
+			StringBuilder script = new StringBuilder(DISABLE_FOREIGN_KEY_CHECKS);
+			script.append("DROP DATABASE IF EXISTS ").append(quote(replaced)).append(";\n");
+			script.append("CREATE DATABASE ").append(quote(replaced)).append(";\n");
+			if (!renames.isEmpty()) {
+				script.append("RENAME TABLE ").append(String.join(", ", renames)).append(";\n");
+			}
+			script.append("DROP DATABASE ").append(quote(replaced)).append(";\n");
+			script.append("DROP DATABASE ").append(quote(restoring)).append(";\n");
+			script.append(RESTORE_FOREIGN_KEY_CHECKS);
+
+			return session.execute(Feed.of(script.toString()));
+
+		} finally {
+			session.close();
 		}
 	}
 
 	@Override
-	public boolean dump(Environment environment, String table, File file) {
+	public List<String> listSnapshots(Environment environment) {
 		Check.notNull(environment);
-		Check.notEmpty(table);
-		Check.notNull(file);
 
-		ProcessBuilder builder;
+		Session session = openSession(environment);
+		if (session == null) {
+			return null;
+		}
 
-		if (environment.isSsh()) {
-			builder = new ProcessBuilder(
-					"ssh", "-C", environment.getSshUsernameHostname(),
-					"mysqldump",
-					"-c", "--compact", "--no-create-info", "--order-by-primary",
-					"--host", environment.getHostname(),
-					"--user", environment.getUsername(),
-					"--password=" + environment.getPassword(),
-					environment.getDatabase(),
-					table);
+		try {
+			List<String> schemas = session.query("SELECT SCHEMA_NAME FROM information_schema.SCHEMATA");
+			if (schemas == null) {
+				return null;
+			}
 
-		} else {
-			builder = new ProcessBuilder(
-					"mysqldump",
-					"-c", "--compact", "--no-create-info", "--order-by-primary",
-					"--host", environment.getHostname(),
-					"--user", environment.getUsername(),
-					"--password=" + environment.getPassword(),
-					environment.getDatabase(),
-					table);
+			String prefix = environment.getDatabase() + SNAPSHOT_INFIX;
+			return schemas.stream()
+					.map(MysqlDialect::unescape)
+					.filter(schema -> schema.startsWith(prefix) && schema.length() > prefix.length())
+					.map(schema -> schema.substring(prefix.length()))
+					.sorted()
+					.collect(Collectors.toList());
+
+		} finally {
+			session.close();
 		}
+	}
 
-		try {
-			Integer exitCode = Processes.save(builder, file);
+	@Override
+	public long sizeOfSnapshot(Environment environment, String name) {
+		Check.notNull(environment);
+		Check.notEmpty(name);
 
-			if (exitCode == null) {
-				System.err.println("Cannot dump the table " + table + ": null exit code");
-				return false;
-			}
+		String snapshot = getSnapshotSchema(environment, name);
+		if (snapshot == null) {
+			return -1;
+		}
 
-			if (exitCode != 0) {
-				System.err.println("Cannot dump the table " + table + ": exit code was " + exitCode);
-				return false;
-			}
+		Session session = openSession(environment);
+		if (session == null) {
+			return -1;
+		}
 
-			return cleanup(file);
+		try {
+			List<String> result = session.query("SELECT COALESCE(SUM(DATA_LENGTH + INDEX_LENGTH), 0)"
+					+ " FROM information_schema.TABLES WHERE TABLE_SCHEMA = '" + snapshot + "'");
+			return result == null || result.isEmpty() ? -1 : Strings.toLong(result.get(0), -1);
 
-		} catch (IOException e) {
-			Exceptions.print(e, System.err);
-			return false;
+		} finally {
+			session.close();
 		}
 	}
 
-	private boolean cleanup(File file) {
-		Check.notNull(file);
+	@Override
+	public boolean dropSnapshot(Environment environment, String name) {
+		Check.notNull(environment);
+		Check.notEmpty(name);
 
-		if (!file.exists()) {
-			System.err.println("File not found: " + file.getAbsolutePath());
+		String snapshot = getSnapshotSchema(environment, name);
+		if (snapshot == null) {
 			return false;
 		}
 
-		if (!file.isFile()) {
-			System.err.println("Not a file: " + file.getAbsolutePath());
+		Session session = openSession(environment);
+		if (session == null) {
 			return false;
 		}
 
 		try {
-			Pattern itemsPattern = Pattern.compile("\\),\\(", Pattern.MULTILINE);
-			Pattern valuesPattern = Pattern.compile("\\) VALUES \\(", Pattern.MULTILINE);
+			return session.execute(Feed.of("DROP DATABASE IF EXISTS " + quote(snapshot) + ";\n"));
+
+		} finally {
+			session.close();
+		}
+	}
+
+	private static String getSnapshotSchema(Environment environment, String name) {
+		Check.notNull(environment);
+		Check.notEmpty(name);
+
+		String schema = environment.getDatabase() + SNAPSHOT_INFIX + name;
+		if (schema.length() > MAX_IDENTIFIER_LENGTH) {
+			System.err.println("Snapshot name too long: " + name);
+			return null;
+		}
+
+		return schema;
+	}
+
+	/**
+	 * Replaces the target schema with a copy of the tables of the source
+	 * schema.
+	 *
+	 * @param session
+	 * @param source
+	 * @param target
+	 * @param home the schema of the session
+	 * @return success
+	 */
+	private static boolean copySchema(Session session, String source, String target, String home) {
+		Check.notNull(session);
+		Check.notEmpty(source);
+		Check.notEmpty(target);
+		Check.notEmpty(home);
+
+		List<String> tables = listBaseTables(session, source);
+		if (tables == null) {
+			return false;
+		}
 
-			String content = Files.load(file);
-			if (Strings.isEmpty(content)) {
+		StringBuilder script = new StringBuilder(DISABLE_FOREIGN_KEY_CHECKS);
+		script.append("DROP DATABASE IF EXISTS ").append(quote(target)).append(";\n");
+		script.append("CREATE DATABASE ").append(quote(target)).append(";\n");
+		script.append("USE ").append(quote(target)).append(";\n");
+
+		for (String table : tables) {
+			List<String> create = session.query("SHOW CREATE TABLE " + quote(source) + "." + quote(table));
+			if (create == null || create.isEmpty()) {
+				System.err.println("Cannot read the definition of " + table);
 				return false;
 			}
 
-			Matcher itemsMatcher = itemsPattern.matcher(content);
-			content = itemsMatcher.replaceAll("),\n(");
+			String row = create.get(0);
+			script.append(unescape(row.substring(row.indexOf('\t') + 1))).append(";\n");
+		}
 
-			Matcher valuesMatcher = valuesPattern.matcher(content);
-			content = valuesMatcher.replaceAll(") VALUES\n(");
+		for (String table : tables) {
+			script.append("INSERT INTO ").append(quote(target)).append(".").append(quote(table))
+					.append(" SELECT * FROM ").append(quote(source)).append(".").append(quote(table)).append(";\n");
+		}
 
-			Files.write(content, file);
-			return true;
+		script.append("USE ").append(quote(home)).append(";\n");
+		script.append(RESTORE_FOREIGN_KEY_CHECKS);
 
-		} catch (IOException e) {
-			Exceptions.print(e, System.err);
+		if (!session.execute(Feed.of(script.toString()))) {
+			System.err.println("Cannot copy " + source + " to " + target);
 			return false;
 		}
+
+		return true;
 	}
 
-	private ProcessBuilder createQueryBuilder(Environment environment, String query) {
-		Check.notNull(environment);
-		Check.notEmpty(query);
+	private static List<String> listBaseTables(Session session, String schema) {
+		Check.notNull(session);
+		Check.notEmpty(schema);
 
-		if (environment.isSsh()) {
-			return new ProcessBuilder(
-					"ssh", "-C", environment.getSshUsernameHostname(),
-					"mysql",
-					"--host", environment.getHostname(),
-					"--user", environment.getUsername(),
-					"--password=" + environment.getPassword(),
-					environment.getDatabase(),
-					"-Ne",
-					"\"" + query + "\"");
+		List<String> rows = session.query("SHOW FULL TABLES FROM " + quote(schema) + " WHERE Table_type = 'BASE TABLE'");
+		if (rows == null) {
+			return null;
+		}
 
-		} else {
-			return new ProcessBuilder(
-					"mysql",
-					"--host", environment.getHostname(),
-					"--user", environment.getUsername(),
-					"--password=" + environment.getPassword(),
-					environment.getDatabase(),
-					"-Ne",
+		return rows.stream()
+				.map(row -> unescape(row.substring(0, row.indexOf('\t'))))
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * @param value a value printed by the client in batch mode
+	 * @return the value without the escaping of the client
+	 */
+	private static String unescape(String value) {
+		Check.notNull(value);
+
+		StringBuilder result = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c != '\\' || i + 1 == value.length()) {
+				result.append(c);
+				continue;
+			}
+
+			char next = value.charAt(++i);
+			switch (next) {
+				case 'n':
+					result.append('\n');
+					break;
+
+				case 't':
+					result.append('\t');
+					break;
+
+				case '0':
+					result.append('\0');
+					break;
+
+				default:
+					result.append(next);
+					break;
+			}
+		}
+
+		return result.toString();
+	}
+
+	@Override
+	public Feed bulkLoad(Environment environment, Feed script) {
+		Check.notNull(environment);
+		Check.notNull(script);
+
+		if (environment.getBulkLoad() == BulkLoad.OFF) {
+			return script;
+		}
+
+		return Feed.concat(Feed.of(BULK_LOAD_START), script, Feed.of(BULK_LOAD_END));
+	}
+
+	/**
+	 * MySQL has no unlogged tables, the existing tables are not changed.
+	 */
+	@Override
+	public boolean beginBulkLoad(Environment environment) {
+		Check.notNull(environment);
+		return true;
+	}
+
+	@Override
+	public boolean endBulkLoad(Environment environment) {
+		Check.notNull(environment);
+		return true;
+	}
+
+	@Override
+	public boolean dump(Environment environment, File file) {
+		Check.notNull(environment);
+		Check.notNull(file);
+
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+			return dump(environment, output);
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean dump(Environment environment, OutputStream output) {
+		Check.notNull(environment);
+		Check.notNull(output);
+
+		warnNonTransactional(environment);
+
+		ProcessBuilder builder = createDumpBuilder(environment, null);
+
+		try {
+			Integer exitCode = Processes.save(builder, DEFINER_FILTER, output);
+
+			if (exitCode == null) {
+				System.err.println("Cannot dump the database: null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot dump the database: exit code was " + exitCode);
+				return false;
+			}
+
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean dump(Environment environment, String table, File file) {
+		return dump(environment, table, null, file);
+	}
+
+	@Override
+	public boolean dump(Environment environment, String table, Range range, File file) {
+		Check.notNull(environment);
+		Check.notEmpty(table);
+		// range
+		Check.notNull(file);
+
+		ProcessBuilder builder = createDumpBuilder(environment, table,
+				withRange(environment, range, "-c", "--compact", "--no-create-info", "--order-by-primary"));
+
+		try (OutputStream output = new MysqlInsertSplitter(new BufferedOutputStream(new FileOutputStream(file)))) {
+			Integer exitCode = Processes.save(builder, LineFilter.NONE, output);
+
+			if (exitCode == null) {
+				System.err.println("Cannot dump the table " + table + ": null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot dump the table " + table + ": exit code was " + exitCode);
+				return false;
+			}
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+
+		// a range may be empty, a table should not
+		if (range == null && file.length() == 0) {
+			System.err.println("Empty dump of the table " + table);
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public List<Range> split(Environment environment, String table, int chunks) {
+		Check.notNull(environment);
+		Check.notEmpty(table);
+		Check.positive(chunks);
+
+		List<String> keys = query(environment, QUERY_PRIMARY_KEY.replace("{table}", escape(table)));
+		if (keys == null) {
+			return null;
+		}
+
+		if (chunks == 1 || keys.size() != 1) {
+			return Collections.singletonList(null);
+		}
+
+		String[] key = keys.get(0).split("\t");
+		if (key.length != 2 || !INTEGER_TYPES.contains(key[1].toLowerCase())) {
+			return Collections.singletonList(null);
+		}
+
+		// the ranges are conditions of mysqldump --where and of the workers,
+		// the column is quoted in them as well
+		String column = quote(key[0]);
+		List<String> result = query(environment, "SELECT MIN(" + column + "), MAX(" + column + ") FROM " + quote(table));
+		if (result == null) {
+			return null;
+		}
+
+		String[] minMax = result.isEmpty() ? new String[0] : result.get(0).split("\t");
+		if (minMax.length != 2 || "NULL".equals(minMax[0])) {
+			return Collections.singletonList(null);
+		}
+
+		return Range.evenly(column, Strings.toLong(minMax[0], 0), Strings.toLong(minMax[1], 0), chunks);
+	}
+
+	@Override
+	public Snapshot openSnapshot(Environment environment, int workers) {
+		Check.notNull(environment);
+		Check.positive(workers);
+
+		List<TableInfo> tables = describeTables(environment);
+		if (tables == null) {
+			return null;
+		}
+
+		warnNonTransactional(environment);
+
+		// MySQL cannot share a transaction between sessions: like mydumper,
+		// the tables of this database are read-locked only while every
+		// worker starts a transaction with a consistent snapshot, then the
+		// workers read them in their transactions
+		String acquire = "";
+		if (!tables.isEmpty()) {
+			acquire = tables.stream()
+					.map(table -> "`" + table.getName() + "` READ")
+					.collect(Collectors.joining(", ", "LOCK TABLES ", ";\n"));
+		}
+		acquire += "SELECT 'locked';\n";
+
+		Snapshot snapshot;
+		try {
+			snapshot = Snapshot.open(createClientBuilder(environment, "--unbuffered", "-N"), acquire, "UNLOCK TABLES;\n");
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return null;
+		}
+
+		if (snapshot == null) {
+			System.err.println("Cannot lock the tables for the snapshot");
+			return null;
+		}
+
+		for (int i = 0; i < workers; i++) {
+			Session worker = openWorker(environment);
+			if (worker == null
+					|| worker.query("SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ") == null
+					|| worker.query("START TRANSACTION WITH CONSISTENT SNAPSHOT") == null) {
+				System.err.println("Cannot start the transactions of the snapshot");
+				Closeables.close(worker);
+				Closeables.close(snapshot);
+				return null;
+			}
+
+			snapshot.addWorker(worker);
+		}
+
+		try {
+			snapshot.release();
+			return snapshot;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			Closeables.close(snapshot);
+			return null;
+		}
+	}
+
+	/**
+	 * @param environment
+	 * @return a read-only session printing the results raw, or null on error
+	 */
+	private Session openWorker(Environment environment) {
+		Check.notNull(environment);
+
+		try {
+			return new Session(createClientBuilder(environment, "--unbuffered", "-N", "-r", "--default-character-set=utf8mb4"),
+					true, "", "", "", "SELECT '%s';\n");
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	/**
+	 * The indexes of a table are built by one ALTER TABLE, which sorts the
+	 * rows once for all of them, and the tables are built in parallel. The
+	 * foreign keys are added afterwards by one script; with the bulk load
+	 * profile their check is skipped, so InnoDB adds them without copying
+	 * the tables. Functional indexes are kept in place.
+	 */
+	@Override
+	public DeferredBuild deferIndexes(Environment environment, boolean unique) {
+		Check.notNull(environment);
+
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot drop the indexes: read-only environment");
+			return null;
+		}
+
+		Session session = openSession(environment);
+		if (session == null) {
+			return null;
+		}
+
+		try {
+			List<String> indexes = session.query(QUERY_DEFERRED_INDEXES);
+			List<String> foreignKeys = indexes == null ? null : session.query(QUERY_DEFERRED_FOREIGN_KEYS);
+			if (foreignKeys == null) {
+				System.err.println("Cannot read the indexes and the foreign keys");
+				return null;
+			}
+
+			// table -> name -> definition, the columns of a row are appended
+			Map<String, Map<String, IndexDefinition>> tableIndexes = new TreeMap<>();
+			for (String line : indexes) {
+				String[] fields = line.split("\t", -1);
+				tableIndexes.computeIfAbsent(fields[0], key -> new LinkedHashMap<>())
+						.computeIfAbsent(fields[1], key -> new IndexDefinition(fields[1], "0".equals(fields[2]), fields[3]))
+						.addColumn(fields[4], fields[5], fields[6]);
+			}
+
+			Map<String, Map<String, ForeignKeyDefinition>> tableForeignKeys = new TreeMap<>();
+			for (String line : foreignKeys) {
+				String[] fields = line.split("\t", -1);
+				tableForeignKeys.computeIfAbsent(fields[0], key -> new LinkedHashMap<>())
+						.computeIfAbsent(fields[1], key -> new ForeignKeyDefinition(fields[1], fields[3], fields[5], fields[6]))
+						.addColumn(fields[2], fields[4]);
+			}
+
+			StringBuilder drop = new StringBuilder();
+			StringBuilder addKeys = new StringBuilder();
+			for (Map.Entry<String, Map<String, ForeignKeyDefinition>> entry : tableForeignKeys.entrySet()) {
+				drop.append(alterTable(entry.getKey(), entry.getValue().values().stream().map(ForeignKeyDefinition::toDrop)));
+				addKeys.append(alterTable(entry.getKey(), entry.getValue().values().stream().map(ForeignKeyDefinition::toAdd)));
+			}
+
+			List<String> builds = new ArrayList<>();
+			for (Map.Entry<String, Map<String, IndexDefinition>> entry : tableIndexes.entrySet()) {
+				List<IndexDefinition> deferred = entry.getValue().values().stream()
+						.filter(IndexDefinition::isDeferrable)
+						.filter(index -> unique || !index.isUnique())
+						.collect(Collectors.toList());
+
+				if (!deferred.isEmpty()) {
+					drop.append(alterTable(entry.getKey(), deferred.stream().map(IndexDefinition::toDrop)));
+					builds.add(alterTable(entry.getKey(), deferred.stream().map(IndexDefinition::toAdd)));
+				}
+			}
+
+			if (drop.length() > 0 && !session.execute(Feed.of(drop.toString()))) {
+				System.err.println("Cannot drop the indexes and the foreign keys");
+				return null;
+			}
+
+			String keys = addKeys.toString();
+			if (!keys.isEmpty() && environment.getBulkLoad() != BulkLoad.OFF) {
+				keys = "SET @db_foreign_key_checks=@@foreign_key_checks, foreign_key_checks=0;\n"
+						+ keys
+						+ "SET foreign_key_checks=@db_foreign_key_checks;\n";
+			}
+
+			DeferredBuild build = new DeferredBuild();
+			build.addStage(builds);
+			build.addStage(keys.isEmpty() ? Collections.emptyList() : Collections.singletonList(keys));
+			return build;
+
+		} finally {
+			session.close();
+		}
+	}
+
+	private static String alterTable(String table, Stream<String> clauses) {
+		Check.notEmpty(table);
+		Check.notNull(clauses);
+
+		return clauses.collect(Collectors.joining(", ", "ALTER TABLE " + quote(table) + " ", ";\n"));
+	}
+
+	/**
+	 * @param value
+	 * @return the value escaped for a string literal
+	 */
+	static String escape(String value) {
+		Check.notNull(value);
+		return value.replace("\\", "\\\\").replace("'", "''");
+	}
+
+	static String quote(String name) {
+		Check.notNull(name);
+		return "`" + name.replace("`", "``") + "`";
+	}
+
+	@Override
+	public Session openSession(Environment environment) {
+		Check.notNull(environment);
+
+		try {
+			// the delimiter is reset after each script, then the client
+			// reconnects, which drops the settings, the variables and the
+			// temporary tables of the script, like a new client would
+			return new Session(createClientBuilder(environment, "--unbuffered", "-N"),
+					environment.getReadOnly() == ReadOnly.TRUE,
+					SCRIPT_START, "\nDELIMITER ;" + SCRIPT_END, "connect " + environment.getDatabase() + "\n", "SELECT '%s';\n");
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	@Override
+	public boolean dump(Environment environment, Section section, Snapshot snapshot, OutputStream output) {
+		Check.notNull(environment);
+		Check.notNull(section);
+		// snapshot
+		Check.notNull(output);
+
+		ProcessBuilder builder;
+
+		switch (section) {
+			case PRE_DATA:
+				builder = createDumpBuilder(environment, null,
+						"--no-data", "--skip-triggers");
+				break;
+
+			case POST_DATA:
+				builder = createDumpBuilder(environment, null,
+						"--no-data", "--no-create-info", "--triggers");
+				break;
+
+			default:
+				throw new UnhandledCaseException(section);
+		}
+
+		try {
+			Integer exitCode = Processes.save(builder, DEFINER_FILTER, output);
+
+			if (exitCode == null) {
+				System.err.println("Cannot dump the schema: null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot dump the schema: exit code was " + exitCode);
+				return false;
+			}
+
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean dump(Environment environment, String table, Range range, Snapshot snapshot, OutputStream output) {
+		Check.notNull(environment);
+		Check.notEmpty(table);
+		// range
+		// snapshot
+		Check.notNull(output);
+
+		if (snapshot != null) {
+			try {
+				return snapshot.apply(worker -> MysqlRowDump.dump(worker, table, range, output));
+
+			} catch (InterruptedException e) {
+				System.err.println("Interrupted while dumping the table " + table);
+				return false;
+			}
+		}
+
+		// the header of the dump disables the foreign key checks
+		ProcessBuilder builder = createDumpBuilder(environment, table,
+				withRange(environment, range, "--no-create-info", "--skip-triggers"));
+
+		try {
+			Integer exitCode = Processes.save(builder, LineFilter.NONE, output);
+
+			if (exitCode == null) {
+				System.err.println("Cannot dump the table " + table + ": null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot dump the table " + table + ": exit code was " + exitCode);
+				return false;
+			}
+
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean isArchiveSupported(Environment environment) {
+		Check.notNull(environment);
+
+		if (backend != Backend.PARALLEL) {
+			return false;
+		}
+
+		String host = environment.isSsh() ? environment.getSshUsernameHostname() : "localhost";
+		return archiveTools.computeIfAbsent(host, key -> {
+			boolean installed = isArchiveToolInstalled(environment);
+			if (!installed) {
+				System.err.println("mydumper and myloader not found on " + key + ", falling back to mysqldump");
+			}
+
+			return installed;
+		});
+	}
+
+	@Override
+	public boolean isArchive(File directory) {
+		Check.notNull(directory);
+
+		return directory.isDirectory() && new File(directory, ARCHIVE_METADATA).isFile();
+	}
+
+	@Override
+	public boolean dumpArchive(Environment environment, File directory, int jobs) {
+		Check.notNull(environment);
+		Check.notNull(directory);
+		Check.positive(jobs);
+
+		if (directory.exists()) {
+			System.err.println("Already exists: " + directory.getAbsolutePath());
+			return false;
+		}
+
+		// the tables are split into chunks of rows, the definers are skipped
+		// like in the plain dumps, the global lock is released as soon as
+		// the threads are in their transactions
+		String rows = String.valueOf(ARCHIVE_CHUNK_ROWS);
+
+		try {
+			Integer exitCode;
+
+			if (environment.isSsh()) {
+				List<String> command = createArchiveCommand(environment, "mydumper", jobs,
+						"--rows", rows, "--triggers", "--routines", "--events", "--skip-definer", "--trx-consistency-only", "--outputdir", Archives.REMOTE_ARCHIVE,
+						"--regex", "'" + excludeFingerprint(environment) + "'");
+				exitCode = Archives.download(environment, String.join(" ", command), directory);
+
+			} else {
+				List<String> command = createArchiveCommand(environment, "mydumper", jobs,
+						"--rows", rows, "--triggers", "--routines", "--events", "--skip-definer", "--trx-consistency-only", "--outputdir", directory.getAbsolutePath(),
+						"--regex", excludeFingerprint(environment));
+				exitCode = Processes.execute(new ProcessBuilder(command), new ArrayList<>());
+			}
+
+			if (exitCode == null) {
+				System.err.println("Cannot dump the database: null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot dump the database: exit code was " + exitCode);
+				return false;
+			}
+
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean restoreArchive(Environment environment, File directory, int jobs) {
+		Check.notNull(environment);
+		Check.notNull(directory);
+		Check.positive(jobs);
+
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot restore the database: read-only environment");
+			return false;
+		}
+
+		if (!isArchive(directory)) {
+			System.err.println("Not an archive: " + directory.getAbsolutePath());
+			return false;
+		}
+
+		try {
+			Integer exitCode;
+
+			if (environment.isSsh()) {
+				List<String> command = createArchiveCommand(environment, "myloader", jobs, "--directory", Archives.REMOTE_ARCHIVE);
+				exitCode = Archives.upload(environment, directory, String.join(" ", command));
+
+			} else {
+				List<String> command = createArchiveCommand(environment, "myloader", jobs, "--directory", directory.getAbsolutePath());
+				exitCode = Processes.execute(new ProcessBuilder(command), new ArrayList<>());
+			}
+
+			if (exitCode == null) {
+				System.err.println("Cannot restore the database: null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot restore the database: exit code was " + exitCode);
+				return false;
+			}
+
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	private boolean isArchiveToolInstalled(Environment environment) {
+		Check.notNull(environment);
+
+		List<String> command = environment.isSsh() ? Ssh.command(environment) : new ArrayList<>();
+
+		command.addAll(Arrays.asList("which", "mydumper", "myloader"));
+
+		try {
+			Integer exitCode = Processes.execute(new ProcessBuilder(command), new ArrayList<>());
+			return exitCode != null && exitCode == 0;
+
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Only InnoDB tables are read from the snapshot of --single-transaction,
+	 * the others can change while they are dumped.
+	 */
+	private void warnNonTransactional(Environment environment) {
+		Check.notNull(environment);
+
+		List<String> tables = query(environment, QUERY_NON_TRANSACTIONAL_TABLES);
+		if (tables == null) {
+			return;
+		}
+
+		String names = tables.stream()
+				.map(line -> line.split("\t"))
+				.filter(columns -> columns.length == 2)
+				.map(columns -> columns[0].trim() + " (" + columns[1].trim() + ")")
+				.collect(Collectors.joining(", "));
+
+		if (!Strings.isEmpty(names)) {
+			System.err.println("Warning: the dump is not consistent for non-transactional tables: " + names);
+		}
+	}
+
+	/**
+	 * @return the lines of the result with tab separated columns
+	 */
+	protected List<String> query(Environment environment, String query) {
+		Check.notNull(environment);
+		Check.notEmpty(query);
+
+		try {
+			List<String> result = new ArrayList<>();
+			Integer exitCode = Processes.execute(createQueryBuilder(environment, query), result);
+
+			if (exitCode == null) {
+				System.err.println("Cannot execute the query: null exit code");
+				return null;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot execute the query: exit code was " + exitCode);
+				return null;
+			}
+
+			return result;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	private static String[] withRange(Environment environment, Range range, String... options) {
+		Check.notNull(environment);
+		// range
+		Check.noneNull(options);
+
+		if (range == null) {
+			return options;
+		}
+
+		String[] result = Arrays.copyOf(options, options.length + 1);
+		result[options.length] = environment.isSsh()
+				? "--where='" + range.getCondition() + "'"
+				: "--where=" + range.getCondition();
+		return result;
+	}
+
+	private ProcessBuilder createClientBuilder(Environment environment, String... options) {
+		Check.notNull(environment);
+		Check.noneNull(options);
+
+		List<String> command = environment.isSsh() ? Ssh.command(environment) : new ArrayList<>();
+
+		command.add("mysql");
+		command.addAll(Arrays.asList(options));
+		command.addAll(Arrays.asList(
+				"--host", environment.getHostname(),
+				"--user", environment.getUsername(),
+				"--password=" + environment.getPassword(),
+				environment.getDatabase()));
+
+		return new ProcessBuilder(command);
+	}
+
+	private ProcessBuilder createDumpBuilder(Environment environment, String table, String... options) {
+		Check.notNull(environment);
+		// table
+		Check.noneNull(options);
+
+		List<String> command = environment.isSsh() ? Ssh.command(environment) : new ArrayList<>();
+
+		// a consistent InnoDB snapshot without table locks, the rows are
+		// streamed instead of buffered
+		command.addAll(Arrays.asList("mysqldump", "--single-transaction", "--quick"));
+		command.add("--ignore-table=" + environment.getDatabase() + "." + Fingerprint.TABLE);
+		command.addAll(Arrays.asList(options));
+		command.addAll(Arrays.asList(
+				"--host", environment.getHostname(),
+				"--user", environment.getUsername(),
+				"--password=" + environment.getPassword(),
+				environment.getDatabase()));
+
+		if (table != null) {
+			command.add(table);
+		}
+
+		return new ProcessBuilder(command);
+	}
+
+	/**
+	 * @param environment
+	 * @return the pattern of mydumper matching every table but the fingerprint
+	 */
+	private static String excludeFingerprint(Environment environment) {
+		Check.notNull(environment);
+
+		return "^(?!" + Pattern.quote(environment.getDatabase() + "." + Fingerprint.TABLE) + "$)";
+	}
+
+	private List<String> createArchiveCommand(Environment environment, String program, int jobs, String... options) {
+		Check.notNull(environment);
+		Check.notEmpty(program);
+		Check.positive(jobs);
+		Check.noneNull(options);
+
+		List<String> command = new ArrayList<>();
+		command.add(program);
+		command.addAll(Arrays.asList(options));
+		command.addAll(Arrays.asList(
+				"--threads", String.valueOf(jobs),
+				"--host", environment.getHostname(),
+				"--user", environment.getUsername(),
+				"--password=" + environment.getPassword(),
+				"--database", environment.getDatabase()));
+
+		return command;
+	}
+
+	private ProcessBuilder createQueryBuilder(Environment environment, String query) {
+		Check.notNull(environment);
+		Check.notEmpty(query);
+
+		// the remote shell would expand the backticks of the quoted names in
+		// double quotes, in single quotes nothing is expanded
+		if (environment.isSsh()) {
+			return new ProcessBuilder(Ssh.command(environment,
+					"mysql",
+					"--host", environment.getHostname(),
+					"--user", environment.getUsername(),
+					"--password=" + environment.getPassword(),
+					environment.getDatabase(),
+					"-Ne",
+					"'" + query.replace("'", "'\\''") + "'"));
+
+		} else {
+			return new ProcessBuilder(
+					"mysql",
+					"--host", environment.getHostname(),
+					"--user", environment.getUsername(),
+					"--password=" + environment.getPassword(),
+					environment.getDatabase(),
+					"-Ne",
 					query);
 		}
 	}
+
+	/**
+	 * A secondary index read from information_schema.STATISTICS.
+	 */
+	private static class IndexDefinition {
+
+		private final String name;
+		private final boolean unique;
+		private final String type;
+		private final List<String> columns = new ArrayList<>();
+		private boolean deferrable = true;
+
+		IndexDefinition(String name, boolean unique, String type) {
+			this.name = name;
+			this.unique = unique;
+			this.type = type;
+		}
+
+		void addColumn(String column, String subPart, String collation) {
+			// a functional index has no column
+			if (NULL.equals(column)) {
+				deferrable = false;
+				return;
+			}
+
+			columns.add(quote(column)
+					+ (NULL.equals(subPart) ? "" : "(" + subPart + ")")
+					+ ("D".equals(collation) ? " DESC" : ""));
+		}
+
+		boolean isDeferrable() {
+			return deferrable;
+		}
+
+		boolean isUnique() {
+			return unique;
+		}
+
+		String toDrop() {
+			return "DROP INDEX " + quote(name);
+		}
+
+		String toAdd() {
+			String kind = "FULLTEXT".equals(type) || "SPATIAL".equals(type) ? type + " " : unique ? "UNIQUE " : "";
+			return "ADD " + kind + "INDEX " + quote(name) + " (" + String.join(", ", columns) + ")";
+		}
+	}
+
+	/**
+	 * A foreign key read from information_schema.KEY_COLUMN_USAGE.
+	 */
+	private static class ForeignKeyDefinition {
+
+		private final String name;
+		private final String referencedTable;
+		private final String deleteRule;
+		private final String updateRule;
+		private final List<String> columns = new ArrayList<>();
+		private final List<String> referencedColumns = new ArrayList<>();
+
+		ForeignKeyDefinition(String name, String referencedTable, String deleteRule, String updateRule) {
+			this.name = name;
+			this.referencedTable = referencedTable;
+			this.deleteRule = deleteRule;
+			this.updateRule = updateRule;
+		}
+
+		void addColumn(String column, String referencedColumn) {
+			columns.add(quote(column));
+			referencedColumns.add(quote(referencedColumn));
+		}
+
+		String toDrop() {
+			return "DROP FOREIGN KEY " + quote(name);
+		}
+
+		String toAdd() {
+			return "ADD CONSTRAINT " + quote(name)
+					+ " FOREIGN KEY (" + String.join(", ", columns) + ")"
+					+ " REFERENCES " + quote(referencedTable) + " (" + String.join(", ", referencedColumns) + ")"
+					+ " ON DELETE " + deleteRule + " ON UPDATE " + updateRule;
+		}
+	}
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits the extended INSERT statements of mysqldump into one row per line
+ * while the data is written. Quoted strings and identifiers are left
+ * untouched.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public final class MysqlInsertSplitter extends FilterOutputStream {
+
+	private static final byte[] ITEMS = "),(".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ITEMS_REPLACEMENT = "),\n(".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] VALUES = ") VALUES (".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] VALUES_REPLACEMENT = ") VALUES\n(".getBytes(StandardCharsets.US_ASCII);
+
+	private final byte[] pending = new byte[VALUES.length];
+	private int pendingLength = 0;
+
+	// the closing character of the current quoted section, 0 if none
+	private byte quote = 0;
+	private boolean escape = false;
+
+	public MysqlInsertSplitter(OutputStream out) {
+		super(out);
+		Check.notNull(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		process((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		Check.notNull(b);
+
+		for (int i = off; i < off + len; i++) {
+			process(b[i]);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			out.write(pending, 0, pendingLength);
+			pendingLength = 0;
+
+		} finally {
+			super.close();
+		}
+	}
+
+	private void process(byte b) throws IOException {
+		if (quote != 0) {
+			out.write(b);
+
+			if (escape) {
+				escape = false;
+
+			} else if (b == '\\' && quote != '`') {
+				escape = true;
+
+			} else if (b == quote) {
+				quote = 0;
+			}
+
+			return;
+		}
+
+		if (pendingLength == 0 && b != ')') {
+			out.write(b);
+
+			if (b == '\'' || b == '"' || b == '`') {
+				quote = b;
+			}
+
+			return;
+		}
+
+		pending[pendingLength++] = b;
+
+		if (matches(ITEMS)) {
+			if (pendingLength == ITEMS.length) {
+				out.write(ITEMS_REPLACEMENT);
+				pendingLength = 0;
+			}
+			return;
+		}
+
+		if (matches(VALUES)) {
+			if (pendingLength == VALUES.length) {
+				out.write(VALUES_REPLACEMENT);
+				pendingLength = 0;
+			}
+			return;
+		}
+
+		// no match: emit the first byte and process the rest again
+		out.write(pending[0]);
+
+		byte[] rest = Arrays.copyOfRange(pending, 1, pendingLength);
+		pendingLength = 0;
+
+		for (byte spot : rest) {
+			process(spot);
+		}
+	}
+
+	private boolean matches(byte[] pattern) {
+		if (pendingLength > pattern.length) {
+			return false;
+		}
+
+		for (int i = 0; i < pendingLength; i++) {
+			if (pending[i] != pattern[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
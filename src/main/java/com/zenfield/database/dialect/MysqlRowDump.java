@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Exceptions;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Dumps the rows of a MySQL table through a session that holds the
+ * transaction of a snapshot. mysqldump opens a transaction of its own, so it
+ * cannot read the view that the workers of a snapshot took while the tables
+ * were locked; the rows are read by a query instead and written as extended
+ * INSERT statements like the data of mysqldump. The values are quoted by the
+ * server, the binary columns in hexadecimal and the line breaks escaped, so
+ * that each row is one line of the result.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+final class MysqlRowDump {
+
+	// loaded like the data of mysqldump, a zero is kept in an auto
+	// increment column
+	private static final String DATA_START = "SET NAMES utf8mb4;\n" + MysqlDialect.DISABLE_FOREIGN_KEY_CHECKS
+			+ "SET @db_sql_mode=@@sql_mode, sql_mode='NO_AUTO_VALUE_ON_ZERO';\n";
+	private static final String DATA_END = "SET sql_mode=@db_sql_mode;\n" + MysqlDialect.RESTORE_FOREIGN_KEY_CHECKS;
+	private static final String QUERY_DATA_COLUMNS = "SELECT COLUMN_NAME, DATA_TYPE"
+			+ " FROM information_schema.COLUMNS"
+			+ " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = '{table}' AND EXTRA NOT LIKE '%GENERATED%'"
+			+ " ORDER BY ORDINAL_POSITION";
+	private static final Set<String> BINARY_TYPES = new HashSet<>(Arrays.asList("binary", "varbinary", "tinyblob", "blob", "mediumblob", "longblob", "bit",
+			"geometry", "point", "linestring", "polygon", "multipoint", "multilinestring", "multipolygon", "geometrycollection"));
+	private static final int INSERT_ROWS = 1000;
+
+	private MysqlRowDump() {
+	}
+
+	/**
+	 * @param worker a session in the transaction of a snapshot
+	 * @param table
+	 * @param range the range of the rows, or null for every row
+	 * @param output
+	 * @return success
+	 */
+	static boolean dump(Session worker, String table, Range range, OutputStream output) {
+		Check.notNull(worker);
+		Check.notEmpty(table);
+		// range
+		Check.notNull(output);
+
+		List<String> columns = worker.query(QUERY_DATA_COLUMNS.replace("{table}", MysqlDialect.escape(table)));
+		if (columns == null) {
+			System.err.println("Cannot describe the table " + table);
+			return false;
+		}
+
+		List<String> names = new ArrayList<>();
+		List<String> values = new ArrayList<>();
+		for (String line : columns) {
+			String[] column = line.split("\t");
+			if (column.length != 2) {
+				continue;
+			}
+
+			String name = MysqlDialect.quote(column[0]);
+			names.add(name);
+			values.add(BINARY_TYPES.contains(column[1].toLowerCase())
+					? "IF(" + name + " IS NULL, 'NULL', IF(LENGTH(" + name + ") = 0, '''''', CONCAT('0x', HEX(" + name + "))))"
+					: "REPLACE(REPLACE(QUOTE(" + name + "), '\\n', '\\\\n'), '\\r', '\\\\r')");
+		}
+
+		if (names.isEmpty()) {
+			System.err.println("Cannot describe the table " + table);
+			return false;
+		}
+
+		String insert = "INSERT INTO " + MysqlDialect.quote(table) + " (" + String.join(", ", names) + ") VALUES\n";
+		String query = "SELECT CONCAT('(', CONCAT_WS(',', " + String.join(", ", values) + "), ')') FROM " + MysqlDialect.quote(table)
+				+ (range == null ? "" : " WHERE " + range.getCondition());
+
+		IOException[] error = new IOException[1];
+		long[] rows = new long[1];
+
+		try {
+			output.write(DATA_START.getBytes(StandardCharsets.UTF_8));
+
+			boolean read = worker.query(query, row -> {
+				if (error[0] != null) {
+					return;
+				}
+
+				try {
+					String separator = rows[0] % INSERT_ROWS != 0 ? ",\n" : rows[0] == 0 ? insert : ";\n" + insert;
+					output.write((separator + row).getBytes(StandardCharsets.UTF_8));
+					rows[0]++;
+
+				} catch (IOException e) {
+					error[0] = e;
+				}
+			});
+
+			if (error[0] != null) {
+				throw error[0];
+			}
+
+			if (!read) {
+				System.err.println("Cannot dump the table " + table);
+				return false;
+			}
+
+			if (rows[0] > 0) {
+				output.write(";\n".getBytes(StandardCharsets.UTF_8));
+			}
+
+			output.write(DATA_END.getBytes(StandardCharsets.UTF_8));
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+}
@@ -24,22 +24,34 @@ package com.zenfield.database.dialect;
 import com.zenfield.core.Check;
 import com.zenfield.core.Closeables;
 import com.zenfield.core.Exceptions;
+import com.zenfield.core.Feed;
 import com.zenfield.core.Files;
+import com.zenfield.core.LineFilter;
 import com.zenfield.core.Lists;
 import com.zenfield.core.Processes;
+import com.zenfield.core.SqlLexer;
 import com.zenfield.core.Strings;
+import com.zenfield.core.UnhandledCaseException;
+import com.zenfield.database.configuration.BulkLoad;
 import com.zenfield.database.configuration.Environment;
 import com.zenfield.database.configuration.ReadOnly;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -47,14 +59,139 @@ import java.util.stream.Collectors;
  */
 public class PostgresDialect implements Dialect {
 
-	private static final String QUERY_LIST_TABLES = "SELECT tablename FROM pg_tables WHERE schemaname='public'";
+	// the fingerprint table is metadata of the tool, it is not listed nor
+	// dumped like the tables of the schema
+	static final String QUERY_LIST_TABLES = "SELECT tablename FROM pg_tables WHERE schemaname='public'"
+			+ " AND tablename <> '" + Fingerprint.TABLE + "'";
+	static final String QUERY_DESCRIBE_TABLES = "SELECT c.relname, c.reltuples::bigint, pg_total_relation_size(c.oid)"
+			+ " FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace"
+			+ " WHERE n.nspname = 'public' AND c.relkind = 'r' AND c.relname <> '" + Fingerprint.TABLE + "'";
+	private static final String EXCLUDE_FINGERPRINT = "public." + Fingerprint.TABLE;
+	private static final String QUERY_EXPORT_SNAPSHOT = "BEGIN TRANSACTION ISOLATION LEVEL REPEATABLE READ READ ONLY;\n"
+			+ "SELECT pg_export_snapshot();\n";
+	private static final String QUERY_PRIMARY_KEY = "SELECT a.attname, format_type(a.atttypid, a.atttypmod)"
+			+ " FROM pg_index i JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = ANY(i.indkey)"
+			+ " WHERE i.indrelid = 'public.{table}'::regclass AND i.indisprimary";
+	private static final String QUERY_HISTOGRAM = "SELECT histogram_bounds::text FROM pg_stats"
+			+ " WHERE schemaname = 'public' AND tablename = '{table}' AND attname = '{column}'";
+	private static final Set<String> INTEGER_TYPES = new HashSet<>(Arrays.asList("smallint", "integer", "bigint"));
 	private static final String QUERY_CLEAR = "DROP SCHEMA public CASCADE; CREATE SCHEMA public;";
+	private static final String QUERY_HAS_FINGERPRINT = "SELECT to_regclass('public." + Fingerprint.TABLE + "') IS NOT NULL";
+	private static final String QUERY_DESCRIBE_SCHEMA = "SELECT c.relkind || ' ' || c.relname || ' ' || a.attname"
+			+ " || ' ' || format_type(a.atttypid, a.atttypmod) || ' ' || a.attnotnull || ' ' || COALESCE(pg_get_expr(d.adbin, d.adrelid), '')"
+			+ " FROM pg_attribute a JOIN pg_class c ON c.oid = a.attrelid JOIN pg_namespace n ON n.oid = c.relnamespace"
+			+ " LEFT JOIN pg_attrdef d ON d.adrelid = a.attrelid AND d.adnum = a.attnum"
+			+ " WHERE n.nspname = 'public' AND a.attnum > 0 AND NOT a.attisdropped AND c.relname <> '" + Fingerprint.TABLE + "'"
+			+ " UNION ALL SELECT 'constraint ' || c.relname || ' ' || k.conname || ' ' || md5(pg_get_constraintdef(k.oid))"
+			+ " FROM pg_constraint k JOIN pg_class c ON c.oid = k.conrelid JOIN pg_namespace n ON n.oid = c.relnamespace"
+			+ " WHERE n.nspname = 'public'"
+			+ " UNION ALL SELECT 'index ' || md5(indexdef) FROM pg_indexes"
+			+ " WHERE schemaname = 'public' AND tablename <> '" + Fingerprint.TABLE + "'"
+			+ " UNION ALL SELECT 'view ' || viewname || ' ' || md5(definition) FROM pg_views WHERE schemaname = 'public'"
+			+ " UNION ALL SELECT 'function ' || p.oid::regprocedure || ' ' || md5(p.prosrc)"
+			+ " FROM pg_proc p JOIN pg_namespace n ON n.oid = p.pronamespace WHERE n.nspname = 'public'"
+			+ " UNION ALL SELECT 'trigger ' || md5(pg_get_triggerdef(t.oid))"
+			+ " FROM pg_trigger t JOIN pg_class c ON c.oid = t.tgrelid JOIN pg_namespace n ON n.oid = c.relnamespace"
+			+ " WHERE n.nspname = 'public' AND NOT t.tgisinternal";
+	// one statement empties the tables referencing each other, then every
+	// sequence of the schema is restarted, owned by a column or not
+	private static final String QUERY_TRUNCATE = "DO $$\n"
+			+ "DECLARE tables text; s regclass;\n"
+			+ "BEGIN\n"
+			+ "  SELECT string_agg(c.oid::regclass::text, ', ') INTO tables FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace\n"
+			+ "      WHERE n.nspname = 'public' AND c.relkind = 'r' AND c.relname <> '" + Fingerprint.TABLE + "';\n"
+			+ "  IF tables IS NOT NULL THEN\n"
+			+ "    EXECUTE 'TRUNCATE ' || tables;\n"
+			+ "  END IF;\n"
+			+ "  FOR s IN SELECT c.oid FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace\n"
+			+ "      WHERE n.nspname = 'public' AND c.relkind = 'S' LOOP\n"
+			+ "    EXECUTE format('ALTER SEQUENCE %s RESTART', s);\n"
+			+ "  END LOOP;\n"
+			+ "END $$;\n";
+	// a database is copied by CREATE DATABASE ... TEMPLATE, which needs the
+	// template without connections; these scripts run on the maintenance
+	// database
+	private static final String ADMIN_DATABASE = "postgres";
+	private static final String SNAPSHOT_INFIX = "_snapshot_";
+	private static final int MAX_IDENTIFIER_LENGTH = 63;
+	private static final String QUERY_DISCONNECT = "SELECT pg_terminate_backend(pid) FROM pg_stat_activity"
+			+ " WHERE datname = '{database}' AND pid <> pg_backend_pid();\n";
+	private static final String QUERY_COPY_DATABASE = QUERY_DISCONNECT
+			+ "DROP DATABASE IF EXISTS {target};\n"
+			+ "CREATE DATABASE {target} TEMPLATE {source};\n";
+	private static final String QUERY_DROP_DATABASE = QUERY_DISCONNECT
+			+ "DROP DATABASE IF EXISTS {target};\n";
+	private static final String QUERY_LIST_DATABASES = "SELECT datname FROM pg_database;\n";
+	private static final LineFilter SCHEMA_PRIVILEGE_FILTER = LineFilter.skipContaining("REVOKE ALL ON SCHEMA", "GRANT ALL ON SCHEMA");
+	private static final String ARCHIVE_TOC = "toc.dat";
+	private static final String ARCHIVE_SCHEMA_PRIVILEGE = " ACL - SCHEMA ";
+	// pg_prewarm is an extension, CREATE EXTENSION pg_prewarm installs it
+	private static final String QUERY_PREWARM = "SELECT pg_prewarm(c.oid) FROM pg_class c"
+			+ " WHERE c.oid = 'public.{table}'::regclass"
+			+ " OR c.oid IN (SELECT indexrelid FROM pg_index WHERE indrelid = 'public.{table}'::regclass)";
+	// the indexes behind constraints are dropped with their constraints
+	private static final String QUERY_DEFERRED_INDEXES = "SELECT format('DROP INDEX %s;', i.indexrelid::regclass)"
+			+ " || chr(9) || pg_get_indexdef(i.indexrelid) || ';'"
+			+ " FROM pg_index i JOIN pg_class c ON c.oid = i.indrelid JOIN pg_namespace n ON n.oid = c.relnamespace"
+			+ " WHERE n.nspname = 'public' AND c.relkind = 'r' AND NOT i.indisprimary"
+			+ " AND NOT EXISTS (SELECT 1 FROM pg_constraint k WHERE k.conindid = i.indexrelid AND k.contype IN ('p', 'u', 'x'))";
+	private static final String QUERY_DEFERRED_CONSTRAINTS = "SELECT k.contype"
+			+ " || chr(9) || format('ALTER TABLE %s DROP CONSTRAINT %I;', k.conrelid::regclass, k.conname)"
+			+ " || chr(9) || format('ALTER TABLE %s ADD CONSTRAINT %I %s', k.conrelid::regclass, k.conname, pg_get_constraintdef(k.oid))"
+			+ " || chr(9) || format('ALTER TABLE %s VALIDATE CONSTRAINT %I;', k.conrelid::regclass, k.conname)"
+			+ " FROM pg_constraint k JOIN pg_class c ON c.oid = k.conrelid JOIN pg_namespace n ON n.oid = c.relnamespace"
+			+ " WHERE n.nspname = 'public' AND c.relkind = 'r' AND k.contype IN ('u', 'f') AND k.convalidated";
+	private static final String BULK_LOAD_START = "SET synchronous_commit = off;\n"
+			+ "SET session_replication_role = replica;\n";
+	private static final String BULK_LOAD_END = "\nRESET synchronous_commit;\n"
+			+ "RESET session_replication_role;\n";
+	// a table cannot be logged while it references an unlogged table, nor be
+	// unlogged while a logged table references it, so the tables are switched
+	// in rounds until no more can be switched; a table left unlogged at the
+	// end of a bulk load would be lost by a crash, so that is an error
+	private static final String QUERY_SET_PERSISTENCE = "DO $$\n"
+			+ "DECLARE t regclass; progress boolean := true; remaining text;\n"
+			+ "BEGIN\n"
+			+ "  WHILE progress LOOP\n"
+			+ "    progress := false;\n"
+			+ "    FOR t IN SELECT c.oid FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace\n"
+			+ "        WHERE n.nspname = 'public' AND c.relkind = 'r' AND c.relpersistence = '{from}' LOOP\n"
+			+ "      BEGIN\n"
+			+ "        EXECUTE format('ALTER TABLE %s SET {to}', t);\n"
+			+ "        progress := true;\n"
+			+ "      EXCEPTION WHEN OTHERS THEN\n"
+			+ "        NULL;\n"
+			+ "      END;\n"
+			+ "    END LOOP;\n"
+			+ "  END LOOP;\n"
+			+ "  SELECT string_agg(c.relname, ', ') INTO remaining FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace\n"
+			+ "      WHERE n.nspname = 'public' AND c.relkind = 'r' AND c.relpersistence = '{from}';\n"
+			+ "  IF remaining IS NOT NULL AND '{to}' = 'LOGGED' THEN\n"
+			+ "    RAISE EXCEPTION 'Cannot switch the tables back to logged: %', remaining;\n"
+			+ "  END IF;\n"
+			+ "END $$;\n";
+
+	private final Backend backend;
+
+	public PostgresDialect() {
+		this(Backend.CLIENT);
+	}
+
+	public PostgresDialect(Backend backend) {
+		Check.notNull(backend);
+		this.backend = backend;
+	}
 
 	@Override
 	public String getName() {
 		return "PostgreSQL";
 	}
 
+	@Override
+	public SqlLexer.Syntax getSyntax() {
+		return SqlLexer.Syntax.POSTGRES;
+	}
+
 	@Override
 	public List<String> listTables(Environment environment) {
 		Check.notNull(environment);
@@ -86,6 +223,43 @@ public class PostgresDialect implements Dialect {
 		}
 	}
 
+	@Override
+	public List<TableInfo> describeTables(Environment environment) {
+		Check.notNull(environment);
+
+		try {
+			ProcessBuilder builder = createQueryBuilder(environment, QUERY_DESCRIBE_TABLES);
+			List<String> result = new ArrayList<>();
+			Integer exitCode = Processes.execute(builder, result);
+
+			if (exitCode == null) {
+				System.err.println("Cannot describe the tables: null exit code");
+				return null;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot describe the tables: exit code was " + exitCode);
+				return null;
+			}
+
+			List<TableInfo> tables = new ArrayList<>();
+			for (String line : result) {
+				String[] columns = line.split("\\|");
+				if (columns.length != 3 || Strings.isEmpty(columns[0].trim())) {
+					continue;
+				}
+
+				tables.add(new TableInfo(columns[0].trim(), Strings.toLong(columns[1], -1), Strings.toLong(columns[2], 0)));
+			}
+
+			return tables;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
 	@Override
 	public int countRows(Environment environment, String table) {
 		Check.notNull(environment);
@@ -166,6 +340,59 @@ public class PostgresDialect implements Dialect {
 		}
 	}
 
+	@Override
+	public boolean saveFingerprint(Environment environment, String fingerprint) {
+		Check.notNull(environment);
+		Check.notEmpty(fingerprint);
+
+		Session session = openSession(environment);
+		if (session == null) {
+			return false;
+		}
+
+		try {
+			List<String> schema = session.query(QUERY_DESCRIBE_SCHEMA);
+			return schema != null && session.execute(Fingerprint.save(Fingerprint.of(fingerprint, schema)));
+
+		} finally {
+			session.close();
+		}
+	}
+
+	@Override
+	public boolean truncate(Environment environment, String fingerprint, int jobs) {
+		Check.notNull(environment);
+		Check.notEmpty(fingerprint);
+		Check.positive(jobs);
+
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			return false;
+		}
+
+		Session session = openSession(environment);
+		if (session == null) {
+			return false;
+		}
+
+		try {
+			List<String> exists = session.query(QUERY_HAS_FINGERPRINT);
+			if (exists == null || !exists.contains("t")) {
+				return false;
+			}
+
+			List<String> stored = session.query(Fingerprint.QUERY_LOAD);
+			List<String> schema = stored == null ? null : session.query(QUERY_DESCRIBE_SCHEMA);
+			if (schema == null || !stored.contains(Fingerprint.of(fingerprint, schema))) {
+				return false;
+			}
+
+			return session.execute(Feed.of(QUERY_TRUNCATE));
+
+		} finally {
+			session.close();
+		}
+	}
+
 	@Override
 	public boolean execute(Environment environment, File script) {
 		Check.notNull(environment);
@@ -190,14 +417,13 @@ public class PostgresDialect implements Dialect {
 			ProcessBuilder builder;
 
 			if (environment.isSsh()) {
-				builder = new ProcessBuilder(
-						"ssh", "-C", environment.getSshUsernameHostname(),
+				builder = new ProcessBuilder(Ssh.command(environment,
 						"PGPASSWORD=" + environment.getPassword(),
 						"psql",
 						"-wU", environment.getUsername(),
 						"-h", environment.getHostname(),
 						environment.getDatabase(),
-						"-q1");
+						"-q", "-v", "ON_ERROR_STOP=1", "-1", "-f", "-"));
 				builder.redirectInput(script.getAbsoluteFile());
 
 			} else {
@@ -206,7 +432,7 @@ public class PostgresDialect implements Dialect {
 						"-wU", environment.getUsername(),
 						"-h", environment.getHostname(),
 						environment.getDatabase(),
-						"-q1f", script.getAbsolutePath());
+						"-q", "-v", "ON_ERROR_STOP=1", "-1", "-f", script.getAbsolutePath());
 
 				builder.environment().put("PGPASSWORD", environment.getPassword());
 			}
@@ -234,116 +460,227 @@ public class PostgresDialect implements Dialect {
 	}
 
 	@Override
-	public boolean dump(Environment environment, File file) {
+	public boolean execute(Environment environment, Feed script) {
 		Check.notNull(environment);
-		Check.notNull(file);
-
-		ProcessBuilder builder;
-
-		if (environment.isSsh()) {
-			builder = new ProcessBuilder(
-					"ssh", "-C", environment.getSshUsernameHostname(),
-					"PGPASSWORD=" + environment.getPassword(),
-					"pg_dump",
-					"-wU", environment.getUsername(),
-					"-h", environment.getHostname(),
-					"--no-owner",
-					environment.getDatabase());
+		Check.notNull(script);
 
-		} else {
-			builder = new ProcessBuilder(
-					"pg_dump",
-					"-wU", environment.getUsername(),
-					"-h", environment.getHostname(),
-					"--no-owner",
-					environment.getDatabase());
-			builder.environment().put("PGPASSWORD", environment.getPassword());
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot execute a script: read-only environment");
+			return false;
 		}
 
-		List<String> lines = new ArrayList<>();
-
 		try {
+			// psql applies -1 only to -c and -f, the script is read by -f from
+			// the standard input; the first error rolls it back with exit code 3
+			ProcessBuilder builder = createClientBuilder(environment, "-q", "-v", "ON_ERROR_STOP=1", "-1", "-f", "-");
+			Integer exitCode = Processes.execute(builder, script);
 
-			Integer exitCode = Processes.execute(builder, lines);
 			if (exitCode == null) {
-				System.err.println("Cannot dump the database: null exit code");
+				System.err.println("Cannot execute: null exit code");
 				return false;
 			}
 
 			if (exitCode != 0) {
-				System.err.println("Cannot dump the database: exit code was " + exitCode);
+				System.err.println("Cannot execute: exit code was " + exitCode);
 				return false;
 			}
 
+			return true;
+
 		} catch (IOException e) {
 			Exceptions.print(e, System.err);
 			return false;
 		}
+	}
 
-		try (Writer writer = new FileWriter(file)) {
-			for (String line : lines) {
-				if (line != null
-						&& !line.contains("REVOKE ALL ON SCHEMA")
-						&& !line.contains("GRANT ALL ON SCHEMA")) {
-					writer.write(line);
-					writer.write('\n');
-				}
-			}
+	@Override
+	public boolean analyze(Session session, String table) {
+		Check.notNull(session);
+		Check.notEmpty(table);
 
-			return true;
+		return session.query("ANALYZE public." + table) != null;
+	}
 
-		} catch (IOException e) {
-			Exceptions.print(e, System.err);
+	/**
+	 * The table and its indexes are read by pg_prewarm.
+	 */
+	@Override
+	public boolean prewarm(Session session, String table) {
+		Check.notNull(session);
+		Check.notEmpty(table);
+
+		return session.query(QUERY_PREWARM.replace("{table}", table.replace("'", "''"))) != null;
+	}
+
+	/**
+	 * The copy is a database next to the original one, the connections to
+	 * the original database are terminated while it is copied.
+	 */
+	@Override
+	public boolean saveSnapshot(Environment environment, String name) {
+		Check.notNull(environment);
+		Check.notEmpty(name);
+
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot save the snapshot: read-only environment");
 			return false;
 		}
+
+		String snapshot = getSnapshotDatabase(environment, name);
+		if (snapshot == null) {
+			return false;
+		}
+
+		return executeAdmin(environment, QUERY_COPY_DATABASE
+				.replace("{database}", environment.getDatabase())
+				.replace("{source}", quote(environment.getDatabase()))
+				.replace("{target}", quote(snapshot)), null);
 	}
 
 	@Override
-	public boolean dump(Environment environment, String table, File file) {
+	public boolean restoreSnapshot(Environment environment, String name) {
 		Check.notNull(environment);
-		Check.notEmpty(table);
-		Check.notNull(file);
+		Check.notEmpty(name);
 
-		ProcessBuilder builder;
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot restore the snapshot: read-only environment");
+			return false;
+		}
 
-		if (environment.isSsh()) {
-			builder = new ProcessBuilder(
-					"ssh", "-C", environment.getSshUsernameHostname(),
-					"PGPASSWORD=" + environment.getPassword(),
-					"pg_dump",
-					"-wU", environment.getUsername(),
-					"-h", environment.getHostname(),
-					"--no-owner",
-					"-t", table,
-					"-a",
-					environment.getDatabase());
+		String snapshot = getSnapshotDatabase(environment, name);
+		if (snapshot == null) {
+			return false;
+		}
 
-		} else {
-			builder = new ProcessBuilder(
-					"pg_dump",
-					"-wU", environment.getUsername(),
-					"-h", environment.getHostname(),
-					"--no-owner",
-					"-t", table,
-					"-a",
-					environment.getDatabase());
+		List<String> snapshots = listSnapshots(environment);
+		if (snapshots == null) {
+			return false;
+		}
+
+		if (!snapshots.contains(name)) {
+			System.err.println("Snapshot not found: " + name);
+			return false;
+		}
+
+		return executeAdmin(environment, QUERY_COPY_DATABASE
+				.replace("{database}", environment.getDatabase())
+				.replace("{source}", quote(snapshot))
+				.replace("{target}", quote(environment.getDatabase())), null);
+	}
+
+	@Override
+	public List<String> listSnapshots(Environment environment) {
+		Check.notNull(environment);
+
+		List<String> databases = new ArrayList<>();
+		if (!executeAdmin(environment, QUERY_LIST_DATABASES, databases)) {
+			return null;
+		}
+
+		String prefix = environment.getDatabase() + SNAPSHOT_INFIX;
+		return databases.stream()
+				.map(String::trim)
+				.filter(database -> database.startsWith(prefix) && database.length() > prefix.length())
+				.map(database -> database.substring(prefix.length()))
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public long sizeOfSnapshot(Environment environment, String name) {
+		Check.notNull(environment);
+		Check.notEmpty(name);
+
+		String snapshot = getSnapshotDatabase(environment, name);
+		if (snapshot == null) {
+			return -1;
+		}
+
+		List<String> result = new ArrayList<>();
+		if (!executeAdmin(environment, "SELECT pg_database_size('" + snapshot + "');\n", result) || result.isEmpty()) {
+			return -1;
+		}
+
+		return Strings.toLong(result.get(0), -1);
+	}
+
+	@Override
+	public boolean dropSnapshot(Environment environment, String name) {
+		Check.notNull(environment);
+		Check.notEmpty(name);
+
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot drop the snapshot: read-only environment");
+			return false;
+		}
+
+		String snapshot = getSnapshotDatabase(environment, name);
+		if (snapshot == null) {
+			return false;
+		}
+
+		return executeAdmin(environment, QUERY_DROP_DATABASE
+				.replace("{database}", snapshot)
+				.replace("{target}", quote(snapshot)), null);
+	}
+
+	private static String getSnapshotDatabase(Environment environment, String name) {
+		Check.notNull(environment);
+		Check.notEmpty(name);
+
+		String database = environment.getDatabase() + SNAPSHOT_INFIX + name;
+		if (database.length() > MAX_IDENTIFIER_LENGTH) {
+			System.err.println("Snapshot name too long: " + name);
+			return null;
+		}
+
+		return database;
+	}
+
+	/**
+	 * Executes the script on the maintenance database, each statement in its
+	 * own transaction.
+	 *
+	 * @param environment
+	 * @param script
+	 * @param result the output lines, or null to ignore them
+	 * @return success
+	 */
+	private boolean executeAdmin(Environment environment, String script, List<String> result) {
+		Check.notNull(environment);
+		Check.notEmpty(script);
+		// result
+
+		List<String> command = environment.isSsh()
+				? Ssh.command(environment, "PGPASSWORD=" + environment.getPassword())
+				: new ArrayList<>();
+
+		command.addAll(Arrays.asList(
+				"psql",
+				"-wU", environment.getUsername(),
+				"-h", environment.getHostname(),
+				"-qAt", "-v", "ON_ERROR_STOP=1",
+				ADMIN_DATABASE));
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		if (!environment.isSsh()) {
 			builder.environment().put("PGPASSWORD", environment.getPassword());
 		}
 
 		try {
-			Integer exitCode = Processes.save(builder, file);
+			Integer exitCode = Processes.execute(builder, Feed.of(script), result == null ? new ArrayList<>() : result);
 
 			if (exitCode == null) {
-				System.err.println("Cannot dump the database: null exit code");
+				System.err.println("Cannot execute: null exit code");
 				return false;
 			}
 
 			if (exitCode != 0) {
-				System.err.println("Cannot dump the database: exit code was " + exitCode);
+				System.err.println("Cannot execute: exit code was " + exitCode);
 				return false;
 			}
 
-			return cleanup(file);
+			return true;
 
 		} catch (IOException e) {
 			Exceptions.print(e, System.err);
@@ -351,75 +688,766 @@ public class PostgresDialect implements Dialect {
 		}
 	}
 
-	private boolean cleanup(File file) {
-		Check.notNull(file);
+	private static String quote(String identifier) {
+		Check.notNull(identifier);
+		return "\"" + identifier.replace("\"", "\"\"") + "\"";
+	}
 
-		if (!file.exists()) {
-			System.err.println("File not found: " + file.getAbsolutePath());
-			return false;
+	@Override
+	public Feed bulkLoad(Environment environment, Feed script) {
+		Check.notNull(environment);
+		Check.notNull(script);
+
+		if (environment.getBulkLoad() == BulkLoad.OFF) {
+			return script;
 		}
 
-		if (!file.isFile()) {
-			System.err.println("Not a file: " + file.getAbsolutePath());
-			return false;
+		return Feed.concat(Feed.of(BULK_LOAD_START), script, Feed.of(BULK_LOAD_END));
+	}
+
+	@Override
+	public boolean beginBulkLoad(Environment environment) {
+		Check.notNull(environment);
+
+		if (environment.getBulkLoad() != BulkLoad.UNLOGGED) {
+			return true;
 		}
 
-		File tmp = null;
-		BufferedReader reader = null;
-		BufferedWriter writer = null;
+		return execute(environment, Feed.of(QUERY_SET_PERSISTENCE.replace("{from}", "p").replace("{to}", "UNLOGGED")));
+	}
 
-		try {
-			tmp = File.createTempFile("db-", ".sql");
-			reader = new BufferedReader(new FileReader(file));
-			writer = new BufferedWriter(new FileWriter(tmp));
+	@Override
+	public boolean endBulkLoad(Environment environment) {
+		Check.notNull(environment);
 
-			String line;
-			while ((line = reader.readLine()) != null) {
-				if (line == null
-						|| Strings.isEmpty(line.trim())
-						|| line.startsWith("--")
-						|| line.startsWith("SET ")) {
-					continue;
-				}
+		if (environment.getBulkLoad() != BulkLoad.UNLOGGED) {
+			return true;
+		}
 
-				writer.append(line);
-				writer.newLine();
-			}
+		return execute(environment, Feed.of(QUERY_SET_PERSISTENCE.replace("{from}", "u").replace("{to}", "LOGGED")));
+	}
+
+	@Override
+	public boolean dump(Environment environment, File file) {
+		Check.notNull(environment);
+		Check.notNull(file);
+
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+			return dump(environment, output);
 
 		} catch (IOException e) {
 			Exceptions.print(e, System.err);
-			Files.delete(tmp);
 			return false;
-
-		} finally {
-			Closeables.close(reader);
-			Closeables.close(writer);
 		}
+	}
 
-		if (tmp == null) {
-			return false;
-		}
+	@Override
+	public boolean dump(Environment environment, OutputStream output) {
+		Check.notNull(environment);
+		Check.notNull(output);
+
+		ProcessBuilder builder = createDumpBuilder(environment);
 
 		try {
-			java.nio.file.Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Integer exitCode = Processes.save(builder, SCHEMA_PRIVILEGE_FILTER, output);
+
+			if (exitCode == null) {
+				System.err.println("Cannot dump the database: null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot dump the database: exit code was " + exitCode);
+				return false;
+			}
+
 			return true;
 
 		} catch (IOException e) {
 			Exceptions.print(e, System.err);
 			return false;
-
-		} finally {
-			Files.delete(tmp);
 		}
 	}
 
+	@Override
+	public boolean dump(Environment environment, String table, File file) {
+		return dump(environment, table, null, file);
+	}
+
+	@Override
+	public boolean dump(Environment environment, String table, Range range, File file) {
+		Check.notNull(environment);
+		Check.notEmpty(table);
+		// range
+		Check.notNull(file);
+
+		if (range != null) {
+			try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+				return copy(environment, table, range, null, output);
+
+			} catch (IOException e) {
+				Exceptions.print(e, System.err);
+				return false;
+			}
+		}
+
+		ProcessBuilder builder = createDumpBuilder(environment, "-t", table, "-a");
+
+		try {
+			Integer exitCode = Processes.save(builder, file);
+
+			if (exitCode == null) {
+				System.err.println("Cannot dump the database: null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot dump the database: exit code was " + exitCode);
+				return false;
+			}
+
+			return cleanup(file);
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	@Override
+	public Snapshot openSnapshot(Environment environment, int workers) {
+		Check.notNull(environment);
+		Check.positive(workers);
+
+		// every dump process imports the exported snapshot by its id
+
+		try {
+			Snapshot snapshot = Snapshot.open(createClientBuilder(environment, "-qAt"), QUERY_EXPORT_SNAPSHOT, "COMMIT;\n");
+			if (snapshot == null) {
+				System.err.println("Cannot export a snapshot");
+			}
+
+			return snapshot;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	/**
+	 * The indexes and the unique constraints are built in parallel. The
+	 * foreign keys are added as NOT VALID first, which does not read the
+	 * tables, and validated in parallel afterwards; validation only takes
+	 * locks that do not block the other validations.
+	 */
+	@Override
+	public DeferredBuild deferIndexes(Environment environment, boolean unique) {
+		Check.notNull(environment);
+
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot drop the indexes: read-only environment");
+			return null;
+		}
+
+		Session session = openSession(environment);
+		if (session == null) {
+			return null;
+		}
+
+		try {
+			// both queries end with their conditions
+			List<String> indexes = session.query(unique ? QUERY_DEFERRED_INDEXES : QUERY_DEFERRED_INDEXES + " AND NOT i.indisunique");
+			List<String> constraints = indexes == null ? null : session.query(unique ? QUERY_DEFERRED_CONSTRAINTS : QUERY_DEFERRED_CONSTRAINTS + " AND k.contype = 'f'");
+			if (constraints == null) {
+				System.err.println("Cannot read the indexes and the constraints");
+				return null;
+			}
+
+			StringBuilder dropKeys = new StringBuilder();
+			StringBuilder dropRest = new StringBuilder();
+			List<String> builds = new ArrayList<>();
+			StringBuilder addKeys = new StringBuilder();
+			List<String> validations = new ArrayList<>();
+
+			for (String line : constraints) {
+				String[] fields = line.split("\t", -1);
+				if ("f".equals(fields[0])) {
+					dropKeys.append(fields[1]).append('\n');
+					addKeys.append(fields[2]).append(" NOT VALID;\n");
+					validations.add(fields[3]);
+
+				} else {
+					dropRest.append(fields[1]).append('\n');
+					builds.add(fields[2] + ";");
+				}
+			}
+
+			for (String line : indexes) {
+				String[] fields = line.split("\t", -1);
+				dropRest.append(fields[0]).append('\n');
+				builds.add(fields[1]);
+			}
+
+			// the foreign keys depend on the unique constraints
+			String drop = dropKeys.toString() + dropRest;
+			if (!drop.isEmpty() && !session.execute(Feed.of(drop))) {
+				System.err.println("Cannot drop the indexes and the constraints");
+				return null;
+			}
+
+			DeferredBuild build = new DeferredBuild();
+			build.addStage(builds);
+			build.addStage(addKeys.length() == 0 ? Collections.emptyList() : Collections.singletonList(addKeys.toString()));
+			build.addStage(validations);
+			return build;
+
+		} finally {
+			session.close();
+		}
+	}
+
+	@Override
+	public Session openSession(Environment environment) {
+		Check.notNull(environment);
+
+		try {
+			return new Session(createClientBuilder(environment, "-qAt", "-v", "ON_ERROR_STOP=1"),
+					environment.getReadOnly() == ReadOnly.TRUE,
+					"BEGIN;\n", "\nCOMMIT;\n", "DISCARD ALL;\n", "\\echo %s\n");
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	@Override
+	public boolean dump(Environment environment, Section section, Snapshot snapshot, OutputStream output) {
+		Check.notNull(environment);
+		Check.notNull(section);
+		// snapshot
+		Check.notNull(output);
+
+		switch (section) {
+			case PRE_DATA:
+				return dumpPart(environment, output, "schema", withSnapshot(snapshot, "--section=pre-data"));
+
+			case POST_DATA:
+				// the values of the sequences are part of the data section
+				String excludeTables = environment.isSsh() ? "--exclude-table-data='*'" : "--exclude-table-data=*";
+				return dumpPart(environment, output, "sequences", withSnapshot(snapshot, "-a", excludeTables))
+						&& dumpPart(environment, output, "schema", withSnapshot(snapshot, "--section=post-data"));
+
+			default:
+				throw new UnhandledCaseException(section);
+		}
+	}
+
+	@Override
+	public boolean dump(Environment environment, String table, Range range, Snapshot snapshot, OutputStream output) {
+		Check.notNull(environment);
+		Check.notEmpty(table);
+		// range
+		// snapshot
+		Check.notNull(output);
+
+		if (range != null) {
+			return copy(environment, table, range, snapshot, output);
+		}
+
+		return dumpPart(environment, output, "table " + table, withSnapshot(snapshot, "-a", "-t", table));
+	}
+
+	@Override
+	public List<Range> split(Environment environment, String table, int chunks) {
+		Check.notNull(environment);
+		Check.notEmpty(table);
+		Check.positive(chunks);
+
+		List<String> keys = query(environment, QUERY_PRIMARY_KEY.replace("{table}", table.replace("'", "''")));
+		if (keys == null) {
+			return null;
+		}
+
+		if (chunks == 1 || keys.size() != 1) {
+			return Collections.singletonList(null);
+		}
+
+		String[] key = keys.get(0).split("\\|");
+		if (key.length != 2 || !INTEGER_TYPES.contains(key[1].trim())) {
+			return Collections.singletonList(null);
+		}
+
+		String column = key[0].trim();
+
+		// the histogram splits skewed keys into equally populated ranges
+		List<String> histogram = query(environment, QUERY_HISTOGRAM.replace("{table}", table.replace("'", "''")).replace("{column}", column.replace("'", "''")));
+		if (histogram == null) {
+			return null;
+		}
+
+		if (!histogram.isEmpty()) {
+			List<Long> bounds = parseArray(histogram.get(0));
+			if (bounds.size() > chunks) {
+				List<Long> selected = new ArrayList<>();
+				for (int i = 1; i < chunks; i++) {
+					selected.add(bounds.get(i * (bounds.size() - 1) / chunks));
+				}
+
+				return Range.of(column, selected);
+			}
+		}
+
+		List<String> result = query(environment, "SELECT MIN(" + column + "), MAX(" + column + ") FROM " + table);
+		if (result == null) {
+			return null;
+		}
+
+		String[] minMax = result.isEmpty() ? new String[0] : result.get(0).split("\\|");
+		if (minMax.length != 2 || Strings.isEmpty(minMax[0].trim())) {
+			return Collections.singletonList(null);
+		}
+
+		return Range.evenly(column, Strings.toLong(minMax[0], 0), Strings.toLong(minMax[1], 0), chunks);
+	}
+
+	@Override
+	public boolean isArchiveSupported(Environment environment) {
+		Check.notNull(environment);
+
+		return backend == Backend.PARALLEL;
+	}
+
+	@Override
+	public boolean isArchive(File directory) {
+		Check.notNull(directory);
+
+		return directory.isDirectory() && new File(directory, ARCHIVE_TOC).isFile();
+	}
+
+	@Override
+	public boolean dumpArchive(Environment environment, File directory, int jobs) {
+		Check.notNull(environment);
+		Check.notNull(directory);
+		Check.positive(jobs);
+
+		if (directory.exists()) {
+			System.err.println("Already exists: " + directory.getAbsolutePath());
+			return false;
+		}
+
+		try {
+			Integer exitCode;
+
+			if (environment.isSsh()) {
+				List<String> command = createCommand(environment, "pg_dump", "--no-owner", "-T", EXCLUDE_FINGERPRINT, "-Fd", "-j", String.valueOf(jobs), "-f", Archives.REMOTE_ARCHIVE);
+				exitCode = Archives.download(environment, "PGPASSWORD=" + environment.getPassword() + " " + String.join(" ", command), directory);
+
+			} else {
+				ProcessBuilder builder = createDumpBuilder(environment, "-Fd", "-j", String.valueOf(jobs), "-f", directory.getAbsolutePath());
+				exitCode = Processes.execute(builder, new ArrayList<>());
+			}
+
+			if (exitCode == null) {
+				System.err.println("Cannot dump the database: null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot dump the database: exit code was " + exitCode);
+				return false;
+			}
+
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	@Override
+	public boolean restoreArchive(Environment environment, File directory, int jobs) {
+		Check.notNull(environment);
+		Check.notNull(directory);
+		Check.positive(jobs);
+
+		if (environment.getReadOnly() == ReadOnly.TRUE) {
+			System.err.println("Cannot restore the database: read-only environment");
+			return false;
+		}
+
+		if (!isArchive(directory)) {
+			System.err.println("Not an archive: " + directory.getAbsolutePath());
+			return false;
+		}
+
+		File list = null;
+
+		try {
+			Integer exitCode;
+
+			if (environment.isSsh()) {
+				// the schema privileges are skipped like in the plain dumps
+				String command = "pg_restore -l " + Archives.REMOTE_ARCHIVE
+						+ " | grep -v '" + ARCHIVE_SCHEMA_PRIVILEGE + "' > $d/list"
+						+ " && PGPASSWORD=" + environment.getPassword() + " "
+						+ String.join(" ", createRestoreCommand(environment, "$d/list", Archives.REMOTE_ARCHIVE, jobs));
+				exitCode = Archives.upload(environment, directory, command);
+
+			} else {
+				list = createRestoreList(directory);
+				if (list == null) {
+					return false;
+				}
+
+				ProcessBuilder builder = new ProcessBuilder(createRestoreCommand(environment, list.getAbsolutePath(), directory.getAbsolutePath(), jobs));
+				builder.environment().put("PGPASSWORD", environment.getPassword());
+				exitCode = Processes.execute(builder, new ArrayList<>());
+			}
+
+			if (exitCode == null) {
+				System.err.println("Cannot restore the database: null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot restore the database: exit code was " + exitCode);
+				return false;
+			}
+
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+
+		} finally {
+			Files.delete(list);
+		}
+	}
+
+	/**
+	 * Writes the rows of the range as a COPY block that can be loaded in
+	 * the same way as the data section of pg_dump.
+	 */
+	protected boolean copy(Environment environment, String table, Range range, Snapshot snapshot, OutputStream output) {
+		Check.notNull(environment);
+		Check.notEmpty(table);
+		Check.notNull(range);
+		// snapshot
+		Check.notNull(output);
+
+		List<String> statements = new ArrayList<>();
+		if (snapshot != null) {
+			statements.add("BEGIN TRANSACTION ISOLATION LEVEL REPEATABLE READ READ ONLY");
+			statements.add("SET TRANSACTION SNAPSHOT '" + snapshot.getId() + "'");
+		}
+		statements.add("COPY (SELECT * FROM public." + table + " WHERE " + range.getCondition() + ") TO STDOUT");
+		if (snapshot != null) {
+			statements.add("COMMIT");
+		}
+
+		List<String> options = new ArrayList<>(Arrays.asList("-q", "-v", "ON_ERROR_STOP=1"));
+		for (String statement : statements) {
+			options.add("-c");
+			options.add(environment.isSsh() ? "\"" + statement + "\"" : statement);
+		}
+
+		try {
+			output.write(("COPY public." + table + " FROM stdin;\n").getBytes(StandardCharsets.UTF_8));
+
+			Integer exitCode = Processes.save(createClientBuilder(environment, options.toArray(new String[options.size()])), LineFilter.NONE, output);
+
+			if (exitCode == null) {
+				System.err.println("Cannot dump the table " + table + " " + range + ": null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot dump the table " + table + " " + range + ": exit code was " + exitCode);
+				return false;
+			}
+
+			output.write("\\.\n".getBytes(StandardCharsets.UTF_8));
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	/**
+	 * @return the non-empty lines of the result, the columns are separated by
+	 * a vertical bar
+	 */
+	protected List<String> query(Environment environment, String query) {
+		Check.notNull(environment);
+		Check.notEmpty(query);
+
+		try {
+			List<String> result = new ArrayList<>();
+			Integer exitCode = Processes.execute(createQueryBuilder(environment, query), result);
+
+			if (exitCode == null) {
+				System.err.println("Cannot execute the query: null exit code");
+				return null;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot execute the query: exit code was " + exitCode);
+				return null;
+			}
+
+			return result
+					.stream()
+					.map(s -> s == null ? "" : s.trim())
+					.filter(s -> !Strings.isEmpty(s))
+					.collect(Collectors.toList());
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	private static List<Long> parseArray(String array) {
+		Check.notNull(array);
+
+		String content = array.trim();
+		if (content.startsWith("{") && content.endsWith("}")) {
+			content = content.substring(1, content.length() - 1);
+		}
+
+		List<Long> values = new ArrayList<>();
+		for (String item : content.split(",")) {
+			long value = Strings.toLong(item, Long.MIN_VALUE);
+			if (value != Long.MIN_VALUE) {
+				values.add(value);
+			}
+		}
+
+		return values;
+	}
+
+	private boolean dumpPart(Environment environment, OutputStream output, String part, String... options) {
+		Check.notNull(environment);
+		Check.notNull(output);
+		Check.notEmpty(part);
+		Check.noneNull(options);
+
+		try {
+			Integer exitCode = Processes.save(createDumpBuilder(environment, options), SCHEMA_PRIVILEGE_FILTER, output);
+
+			if (exitCode == null) {
+				System.err.println("Cannot dump the " + part + ": null exit code");
+				return false;
+			}
+
+			if (exitCode != 0) {
+				System.err.println("Cannot dump the " + part + ": exit code was " + exitCode);
+				return false;
+			}
+
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+		}
+	}
+
+	private static String[] withSnapshot(Snapshot snapshot, String... options) {
+		// snapshot
+		Check.noneNull(options);
+
+		if (snapshot == null) {
+			return options;
+		}
+
+		String[] result = Arrays.copyOf(options, options.length + 1);
+		result[options.length] = "--snapshot=" + snapshot.getId();
+		return result;
+	}
+
+	private boolean cleanup(File file) {
+		Check.notNull(file);
+
+		if (!file.exists()) {
+			System.err.println("File not found: " + file.getAbsolutePath());
+			return false;
+		}
+
+		if (!file.isFile()) {
+			System.err.println("Not a file: " + file.getAbsolutePath());
+			return false;
+		}
+
+		File tmp = null;
+		BufferedReader reader = null;
+		BufferedWriter writer = null;
+
+		try {
+			tmp = File.createTempFile("db-", ".sql");
+			reader = new BufferedReader(new FileReader(file));
+			writer = new BufferedWriter(new FileWriter(tmp));
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line == null
+						|| Strings.isEmpty(line.trim())
+						|| line.startsWith("--")
+						|| line.startsWith("SET ")) {
+					continue;
+				}
+
+				writer.append(line);
+				writer.newLine();
+			}
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			Files.delete(tmp);
+			return false;
+
+		} finally {
+			Closeables.close(reader);
+			Closeables.close(writer);
+		}
+
+		if (tmp == null) {
+			return false;
+		}
+
+		try {
+			java.nio.file.Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			return true;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return false;
+
+		} finally {
+			Files.delete(tmp);
+		}
+	}
+
+	/**
+	 * Lists the contents of the archive without the schema privileges, in
+	 * the same way as the plain dumps are filtered.
+	 */
+	private File createRestoreList(File directory) throws IOException {
+		Check.notNull(directory);
+
+		List<String> entries = new ArrayList<>();
+		Integer exitCode = Processes.execute(new ProcessBuilder("pg_restore", "-l", directory.getAbsolutePath()), entries);
+
+		if (exitCode == null) {
+			System.err.println("Cannot list the archive: null exit code");
+			return null;
+		}
+
+		if (exitCode != 0) {
+			System.err.println("Cannot list the archive: exit code was " + exitCode);
+			return null;
+		}
+
+		File list = File.createTempFile("db-", ".list");
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(list))) {
+			for (String entry : entries) {
+				if (!entry.contains(ARCHIVE_SCHEMA_PRIVILEGE)) {
+					writer.append(entry);
+					writer.newLine();
+				}
+			}
+
+		} catch (IOException e) {
+			Files.delete(list);
+			throw e;
+		}
+
+		return list;
+	}
+
+	private List<String> createRestoreCommand(Environment environment, String list, String archive, int jobs) {
+		Check.notNull(environment);
+		Check.notEmpty(list);
+		Check.notEmpty(archive);
+		Check.positive(jobs);
+
+		return Arrays.asList(
+				"pg_restore",
+				"-wU", environment.getUsername(),
+				"-h", environment.getHostname(),
+				"-d", environment.getDatabase(),
+				"--no-owner",
+				"--exit-on-error",
+				"-j", String.valueOf(jobs),
+				"-L", list,
+				archive);
+	}
+
+	private ProcessBuilder createClientBuilder(Environment environment, String... options) {
+		Check.notNull(environment);
+		Check.noneNull(options);
+
+		return createBuilder(environment, "psql", options);
+	}
+
+	private ProcessBuilder createDumpBuilder(Environment environment, String... options) {
+		Check.notNull(environment);
+		Check.noneNull(options);
+
+		List<String> arguments = new ArrayList<>();
+		arguments.add("--no-owner");
+		arguments.add("-T");
+		arguments.add(EXCLUDE_FINGERPRINT);
+		arguments.addAll(Arrays.asList(options));
+		return createBuilder(environment, "pg_dump", arguments.toArray(new String[arguments.size()]));
+	}
+
+	private ProcessBuilder createBuilder(Environment environment, String program, String... options) {
+		Check.notNull(environment);
+		Check.notEmpty(program);
+		Check.noneNull(options);
+
+		List<String> command = environment.isSsh()
+				? Ssh.command(environment, "PGPASSWORD=" + environment.getPassword())
+				: new ArrayList<>();
+
+		command.addAll(createCommand(environment, program, options));
+
+		ProcessBuilder builder = new ProcessBuilder(command);
+		if (!environment.isSsh()) {
+			builder.environment().put("PGPASSWORD", environment.getPassword());
+		}
+
+		return builder;
+	}
+
+	private List<String> createCommand(Environment environment, String program, String... options) {
+		Check.notNull(environment);
+		Check.notEmpty(program);
+		Check.noneNull(options);
+
+		List<String> command = new ArrayList<>(Arrays.asList(
+				program,
+				"-wU", environment.getUsername(),
+				"-h", environment.getHostname()));
+		command.addAll(Arrays.asList(options));
+		command.add(environment.getDatabase());
+		return command;
+	}
+
 	private ProcessBuilder createQueryBuilder(Environment environment, String query) {
 		Check.notNull(environment);
 		Check.notEmpty(query);
 
 		if (environment.isSsh()) {
-			return new ProcessBuilder(
-					"ssh", "-C", environment.getSshUsernameHostname(),
+			return new ProcessBuilder(Ssh.command(environment,
 					"PGPASSWORD=" + environment.getPassword(),
 					"psql",
 					"-q",
@@ -427,7 +1455,7 @@ public class PostgresDialect implements Dialect {
 					"-h", environment.getHostname(),
 					environment.getDatabase(),
 					"-tc",
-					"\"" + query + "\"");
+					"\"" + query + "\""));
 
 		} else {
 			ProcessBuilder builder = new ProcessBuilder(
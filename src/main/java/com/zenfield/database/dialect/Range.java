@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A half-open range of an integer primary key: lower (inclusive) to upper
+ * (exclusive). A missing bound means the range is unbounded in that
+ * direction.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public class Range {
+
+	private final String column;
+	private final Long lower;
+	private final Long upper;
+
+	public Range(String column, Long lower, Long upper) {
+		Check.notEmpty(column);
+		// lower
+		// upper
+
+		if (lower != null && upper != null) {
+			Check.that(lower < upper, "Empty range");
+		}
+
+		this.column = column;
+		this.lower = lower;
+		this.upper = upper;
+	}
+
+	/**
+	 * Creates the ranges that cover every value of the column, split at the
+	 * given bounds.
+	 *
+	 * @param column
+	 * @param bounds
+	 * @return the ranges in ascending order
+	 */
+	public static List<Range> of(String column, List<Long> bounds) {
+		Check.notEmpty(column);
+		Check.noneNull(bounds);
+
+		List<Long> sorted = new ArrayList<>(bounds);
+		Collections.sort(sorted);
+
+		List<Range> ranges = new ArrayList<>();
+		Long lower = null;
+		for (Long bound : sorted) {
+			if (lower != null && bound <= lower) {
+				continue;
+			}
+
+			ranges.add(new Range(column, lower, bound));
+			lower = bound;
+		}
+
+		ranges.add(new Range(column, lower, null));
+		return ranges;
+	}
+
+	/**
+	 * Splits the values between min and max into equal ranges.
+	 *
+	 * @param column
+	 * @param min
+	 * @param max
+	 * @param chunks
+	 * @return the ranges in ascending order
+	 */
+	public static List<Range> evenly(String column, long min, long max, int chunks) {
+		Check.notEmpty(column);
+		Check.notGreater(min, max);
+		Check.positive(chunks);
+
+		double step = ((double) max - min + 1) / chunks;
+
+		List<Long> bounds = new ArrayList<>();
+		for (int i = 1; i < chunks; i++) {
+			bounds.add(min + (long) (step * i));
+		}
+
+		return of(column, bounds);
+	}
+
+	public String getColumn() {
+		return column;
+	}
+
+	public Long getLower() {
+		return lower;
+	}
+
+	public Long getUpper() {
+		return upper;
+	}
+
+	/**
+	 * @return the SQL condition selecting the rows of the range
+	 */
+	public String getCondition() {
+		if (lower == null && upper == null) {
+			return "1 = 1";
+		}
+
+		if (lower == null) {
+			return column + " < " + upper;
+		}
+
+		if (upper == null) {
+			return column + " >= " + lower;
+		}
+
+		return column + " >= " + lower + " AND " + column + " < " + upper;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + (lower == null ? "" : lower) + ", " + (upper == null ? "" : upper) + ")";
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Closeables;
+import com.zenfield.core.Exceptions;
+import com.zenfield.core.Feed;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * A client process that is kept open to execute several scripts and queries
+ * on one connection. After each script a marker is printed by the client, the
+ * script is done when the marker is read back. The client stops at the first
+ * error, so an error is detected when the output ends before the marker; the
+ * open transaction of the script is rolled back and the session is closed.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public class Session implements Closeable {
+
+	private static final int BUFFER_SIZE = 65536;
+
+	private final Process process;
+	private final OutputStream output;
+	private final BufferedReader reader;
+	private final boolean readOnly;
+	private final String begin;
+	private final String commit;
+	private final String reset;
+	private final String echo;
+	private final String marker = "db-session-" + UUID.randomUUID();
+	private int count;
+	private boolean alive = true;
+
+	/**
+	 * @param builder the client reading the statements from its standard
+	 * input and stopping at the first error
+	 * @param readOnly
+	 * @param begin starts the transaction of a script
+	 * @param commit commits the transaction of a script
+	 * @param reset restores the settings of the session after a script, so
+	 * that they do not leak into the next one
+	 * @param echo prints its argument, a format with one %s
+	 * @throws IOException
+	 */
+	Session(ProcessBuilder builder, boolean readOnly, String begin, String commit, String reset, String echo) throws IOException {
+		Check.notNull(builder);
+		Check.notNull(begin);
+		Check.notNull(commit);
+		Check.notNull(reset);
+		Check.notEmpty(echo);
+
+		builder.redirectInput(ProcessBuilder.Redirect.PIPE);
+		builder.redirectOutput(ProcessBuilder.Redirect.PIPE);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+		this.process = builder.start();
+		this.output = new BufferedOutputStream(process.getOutputStream(), BUFFER_SIZE);
+		this.reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		this.readOnly = readOnly;
+		this.begin = begin;
+		this.commit = commit;
+		this.reset = reset;
+		this.echo = echo;
+	}
+
+	public boolean isAlive() {
+		return alive;
+	}
+
+	public boolean execute(File script) {
+		Check.notNull(script);
+
+		if (!script.exists()) {
+			System.err.println("File not found: " + script.getName());
+			return false;
+		}
+
+		if (!script.isFile()) {
+			System.err.println("Not a file: " + script.getName());
+			return false;
+		}
+
+		return execute(Feed.of(script));
+	}
+
+	/**
+	 * Executes the script in one transaction. The output of the script is
+	 * printed.
+	 *
+	 * @param script
+	 * @return success
+	 */
+	public boolean execute(Feed script) {
+		Check.notNull(script);
+
+		if (readOnly) {
+			System.err.println("Cannot execute a script: read-only environment");
+			return false;
+		}
+
+		return run(Feed.concat(Feed.of(begin), script, Feed.of(commit), Feed.of(reset)), System.out::println);
+	}
+
+	/**
+	 * @param query a single statement without the terminating semicolon
+	 * @return the lines of the result, or null on error
+	 */
+	public List<String> query(String query) {
+		Check.notEmpty(query);
+
+		List<String> result = new ArrayList<>();
+		if (!query(query, result::add)) {
+			return null;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Streams the result of a query that is too large to be kept in memory.
+	 *
+	 * @param query a single statement without the terminating semicolon
+	 * @param lines receives the lines of the result
+	 * @return success
+	 */
+	public boolean query(String query, Consumer<String> lines) {
+		Check.notEmpty(query);
+		Check.notNull(lines);
+
+		return run(Feed.of(query + ";\n"), lines);
+	}
+
+	private synchronized boolean run(Feed feed, Consumer<String> lines) {
+		Check.notNull(feed);
+		Check.notNull(lines);
+
+		if (!alive) {
+			System.err.println("Cannot execute: the session is closed");
+			return false;
+		}
+
+		String done = marker + "-" + (++count);
+		Feed complete = Feed.concat(feed, Feed.of("\n" + String.format(echo, done)));
+
+		// written on a separate thread, the output may be larger than the
+		// buffer of the pipe
+		IOException[] error = new IOException[1];
+		Thread writer = new Thread(() -> {
+			try {
+				complete.write(output);
+				output.flush();
+
+			} catch (IOException e) {
+				error[0] = e;
+				process.destroy();
+			}
+		});
+		writer.setDaemon(true);
+		writer.start();
+
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().equals(done)) {
+					writer.join();
+					return error[0] == null;
+				}
+
+				lines.accept(line);
+			}
+
+			writer.join();
+			if (error[0] != null) {
+				Exceptions.print(error[0], System.err);
+			}
+
+			System.err.println("The session ended before the script was done");
+
+		} catch (InterruptedException e) {
+			process.destroy();
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			process.destroy();
+		}
+
+		close();
+		return false;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (!alive) {
+			return;
+		}
+
+		alive = false;
+
+		try {
+			Closeables.close(output);
+
+			while (reader.readLine() != null) {
+				// drain
+			}
+
+			process.waitFor();
+
+		} catch (IOException e) {
+			process.destroy();
+
+		} catch (InterruptedException e) {
+			process.destroy();
+
+		} finally {
+			Closeables.close(reader);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import com.zenfield.database.configuration.Environment;
+import java.io.Closeable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Sessions of one environment shared by parallel tasks. A task takes a free
+ * session and puts it back when it is done, a session closed by a failure is
+ * replaced by a new one if the pool can open one.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public class SessionPool implements Closeable {
+
+	private final Supplier<Session> opener;
+	private final BlockingQueue<Session> sessions = new LinkedBlockingQueue<>();
+
+	/**
+	 * @param opener opens a session replacing a closed one, or returns null
+	 * if it cannot be replaced
+	 */
+	SessionPool(Supplier<Session> opener) {
+		Check.notNull(opener);
+		this.opener = opener;
+	}
+
+	/**
+	 * @param dialect
+	 * @param environment
+	 * @param size
+	 * @return the pool, or null if the sessions cannot be opened
+	 */
+	public static SessionPool open(Dialect dialect, Environment environment, int size) {
+		Check.notNull(dialect);
+		Check.notNull(environment);
+		Check.positive(size);
+
+		SessionPool pool = new SessionPool(() -> dialect.openSession(environment));
+		for (int i = 0; i < size; i++) {
+			Session session = dialect.openSession(environment);
+			if (session == null) {
+				pool.close();
+				System.err.println("Cannot open a session to " + environment.getName());
+				return null;
+			}
+
+			pool.add(session);
+		}
+
+		return pool;
+	}
+
+	void add(Session session) {
+		Check.notNull(session);
+		sessions.add(session);
+	}
+
+	/**
+	 * Runs the work on the next free session, waits while all of them are
+	 * busy.
+	 *
+	 * @param <T>
+	 * @param work
+	 * @return the result of the work
+	 * @throws InterruptedException
+	 */
+	public <T> T apply(Function<Session, T> work) throws InterruptedException {
+		Check.notNull(work);
+
+		Session session = sessions.take();
+		try {
+			return work.apply(session);
+
+		} finally {
+			Session next = session.isAlive() ? session : opener.get();
+			sessions.add(next != null ? next : session);
+		}
+	}
+
+	@Override
+	public void close() {
+		sessions.forEach(Session::close);
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Closeables;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * A client session that keeps a consistent view of the source database open
+ * while it is being dumped by several processes. If the dialect cannot share
+ * the view, the dumps read through worker sessions which took their own view
+ * while the snapshot session held it; the snapshot session is released then.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+public class Snapshot implements Closeable {
+
+	private final Process process;
+	private final BufferedReader reader;
+	private final String id;
+	private final String release;
+	// a worker cannot be replaced, a new session would not see the snapshot
+	private final SessionPool workers = new SessionPool(() -> null);
+	private boolean released;
+
+	private Snapshot(Process process, BufferedReader reader, String id, String release) {
+		Check.notNull(process);
+		Check.notNull(reader);
+		Check.notEmpty(id);
+		Check.notNull(release);
+
+		this.process = process;
+		this.reader = reader;
+		this.id = id;
+		this.release = release;
+	}
+
+	/**
+	 * Starts the client and sends the acquire statements into it. The first
+	 * non-empty line of the output becomes the id of the snapshot, the
+	 * session is kept open until the snapshot is closed.
+	 *
+	 * @param builder
+	 * @param acquire
+	 * @param release
+	 * @return the snapshot, or null if the client exited
+	 * @throws IOException
+	 */
+	public static Snapshot open(ProcessBuilder builder, String acquire, String release) throws IOException {
+		Check.notNull(builder);
+		Check.notEmpty(acquire);
+		Check.notNull(release);
+
+		builder.redirectInput(ProcessBuilder.Redirect.PIPE);
+		builder.redirectOutput(ProcessBuilder.Redirect.PIPE);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+		Process process = builder.start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+		try {
+			OutputStream out = process.getOutputStream();
+			out.write(acquire.getBytes(StandardCharsets.UTF_8));
+			out.flush();
+
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty()) {
+					return new Snapshot(process, reader, line, release);
+				}
+			}
+
+		} catch (IOException e) {
+			process.destroy();
+			Closeables.close(reader);
+			throw e;
+		}
+
+		process.destroy();
+		Closeables.close(reader);
+		return null;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	void addWorker(Session worker) {
+		Check.notNull(worker);
+		workers.add(worker);
+	}
+
+	/**
+	 * Runs the work on the next free worker session, waits while all of them
+	 * are busy.
+	 *
+	 * @param <T>
+	 * @param work
+	 * @return the result of the work
+	 * @throws InterruptedException
+	 */
+	<T> T apply(Function<Session, T> work) throws InterruptedException {
+		Check.notNull(work);
+
+		return workers.apply(work);
+	}
+
+	/**
+	 * Sends the release statements and ends the snapshot session, the
+	 * workers keep their view until the snapshot is closed.
+	 *
+	 * @throws IOException
+	 */
+	synchronized void release() throws IOException {
+		if (released) {
+			return;
+		}
+
+		released = true;
+
+		try {
+			OutputStream out = process.getOutputStream();
+			out.write(release.getBytes(StandardCharsets.UTF_8));
+			out.close();
+
+			while (reader.readLine() != null) {
+				// drain
+			}
+
+			process.waitFor();
+
+		} catch (InterruptedException e) {
+			process.destroy();
+
+		} finally {
+			Closeables.close(reader);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		workers.close();
+		release();
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2015-2017 Zenfield Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.zenfield.database.dialect;
+
+import com.zenfield.core.Check;
+import com.zenfield.core.Exceptions;
+import com.zenfield.core.Files;
+import com.zenfield.core.Processes;
+import com.zenfield.database.configuration.Environment;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the ssh commands of the remote environments. The first command for a
+ * host opens a multiplexed master connection that is shared by the later
+ * commands and closed when the JVM exits. If the master cannot be opened, the
+ * commands connect on their own.
+ *
+ * @author MICSKO Viktor (viktor@zenfield.com)
+ */
+final class Ssh {
+
+	static final String LOOPBACK = "127.0.0.1";
+	private static final int TUNNEL_TIMEOUT = 10000;
+
+	private static final Map<String, String> SOCKETS = new HashMap<>();
+	private static final Map<String, Integer> FORWARDS = new HashMap<>();
+	private static final List<Process> TUNNELS = new ArrayList<>();
+	private static File directory;
+
+	private Ssh() {
+	}
+
+	/**
+	 * @param environment
+	 * @param arguments the remote command
+	 * @return the ssh command of the environment followed by the arguments
+	 */
+	static List<String> command(Environment environment, String... arguments) {
+		Check.notNull(environment);
+		Check.noneNull(arguments);
+
+		String host = environment.getSshUsernameHostname();
+
+		List<String> command = new ArrayList<>(Arrays.asList("ssh", "-C"));
+		String socket = open(host);
+		if (socket != null) {
+			command.addAll(Arrays.asList("-S", socket, "-o", "ControlMaster=no"));
+		}
+
+		command.add(host);
+		command.addAll(Arrays.asList(arguments));
+		return command;
+	}
+
+	/**
+	 * Forwards a local port to the address as seen from the ssh host of the
+	 * environment. The forward is added to the master connection, or kept
+	 * open by a separate ssh process if there is no master.
+	 *
+	 * @param environment
+	 * @param hostname
+	 * @param port
+	 * @return the local port on {@value #LOOPBACK}, or null on error
+	 */
+	static synchronized Integer forward(Environment environment, String hostname, int port) {
+		Check.notNull(environment);
+		Check.notEmpty(hostname);
+		Check.positive(port);
+
+		String host = environment.getSshUsernameHostname();
+		String key = host + " " + hostname + ":" + port;
+		if (FORWARDS.containsKey(key)) {
+			return FORWARDS.get(key);
+		}
+
+		try {
+			int local;
+			try (ServerSocket socket = new ServerSocket(0)) {
+				local = socket.getLocalPort();
+			}
+
+			String forward = LOOPBACK + ":" + local + ":" + hostname + ":" + port;
+			String socket = open(host);
+
+			if (socket != null) {
+				ProcessBuilder builder = new ProcessBuilder("ssh", "-S", socket, "-O", "forward", "-L", forward, host);
+				builder.redirectErrorStream(true);
+
+				Integer exitCode = Processes.execute(builder, new ArrayList<>());
+				if (exitCode == null || exitCode != 0) {
+					System.err.println("Cannot forward a port to " + hostname + ":" + port + " through " + host);
+					return null;
+				}
+
+			} else {
+				ProcessBuilder builder = new ProcessBuilder("ssh", "-C", "-N", "-L", forward, host);
+				builder.inheritIO();
+				TUNNELS.add(builder.start());
+
+				if (!await(local)) {
+					System.err.println("Cannot forward a port to " + hostname + ":" + port + " through " + host);
+					return null;
+				}
+			}
+
+			FORWARDS.put(key, local);
+			return local;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+			return null;
+		}
+	}
+
+	private static boolean await(int port) {
+		long deadline = System.currentTimeMillis() + TUNNEL_TIMEOUT;
+
+		while (System.currentTimeMillis() < deadline) {
+			try (Socket socket = new Socket()) {
+				socket.connect(new InetSocketAddress(LOOPBACK, port), TUNNEL_TIMEOUT);
+				return true;
+
+			} catch (IOException e) {
+				try {
+					Thread.sleep(100);
+
+				} catch (InterruptedException ex) {
+					return false;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private static synchronized String open(String host) {
+		Check.notEmpty(host);
+
+		if (SOCKETS.containsKey(host)) {
+			return SOCKETS.get(host);
+		}
+
+		String socket = null;
+
+		try {
+			if (directory == null) {
+				directory = java.nio.file.Files.createTempDirectory("db-ssh-").toFile();
+				Runtime.getRuntime().addShutdownHook(new Thread(Ssh::close));
+			}
+
+			String path = new File(directory, String.valueOf(SOCKETS.size())).getAbsolutePath();
+
+			// the master goes to the background after the authentication
+			ProcessBuilder builder = new ProcessBuilder("ssh", "-C", "-M", "-N", "-f", "-S", path, host);
+			builder.inheritIO();
+
+			int exitCode = builder.start().waitFor();
+			if (exitCode == 0) {
+				socket = path;
+			} else {
+				System.err.println("Cannot open a shared ssh connection to " + host + ": exit code was " + exitCode);
+			}
+
+		} catch (InterruptedException e) {
+			return null;
+
+		} catch (IOException e) {
+			Exceptions.print(e, System.err);
+		}
+
+		SOCKETS.put(host, socket);
+		return socket;
+	}
+
+	private static synchronized void close() {
+		for (Map.Entry<String, String> entry : SOCKETS.entrySet()) {
+			if (entry.getValue() == null) {
+				continue;
+			}
+
+			ProcessBuilder builder = new ProcessBuilder("ssh", "-S", entry.getValue(), "-O", "exit", entry.getKey());
+			builder.redirectErrorStream(true);
+
+			try {
+				Processes.execute(builder, new ArrayList<>());
+
+			} catch (IOException e) {
+				Exceptions.print(e, System.err);
+			}
+		}
+
+		TUNNELS.forEach(Process::destroy);
+		Files.deleteTree(directory);
+	}
+}